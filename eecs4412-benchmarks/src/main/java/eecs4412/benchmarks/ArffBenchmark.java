@@ -0,0 +1,109 @@
+package eecs4412.benchmarks;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import eecs4412.project.main.Main;
+import eecs4412.project.model.ArffDataModel;
+import eecs4412.project.model.InvertedIndexFile;
+
+/**
+ * ARFF generation of the selected attributes: Main.arffBuilder, ArffDataModel.toString
+ * and the streaming Main.arffStreamer
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ArffBenchmark {
+
+    /**
+     * a trimmed index and the Main that selected its attributes, fresh per call since
+     * arffBuilder keeps adding rows to the data model of its Main
+     */
+    @State(Scope.Thread)
+    public static class SelectedState {
+        Main main;
+        InvertedIndexFile index;
+
+        @Setup(Level.Invocation)
+        public void setUp(MailboxState mailbox) {
+            main = new Main();
+            index = mailbox.buildIndex();
+            main.wordSelector().accept(index);
+        }
+    }
+
+    /**
+     * a data model built once
+     */
+    @State(Scope.Thread)
+    public static class DataModelState {
+        ArffDataModel dataModel;
+
+        @Setup(Level.Trial)
+        public void setUp(MailboxState mailbox) {
+            Main main = new Main();
+            InvertedIndexFile index = mailbox.buildIndex();
+            main.wordSelector().accept(index);
+            main.arffBuilder().accept(index);
+            dataModel = main.getArffDataModel();
+        }
+    }
+
+    /**
+     * a scratch output file
+     */
+    @State(Scope.Thread)
+    public static class OutputState {
+        Path file;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            file = Files.createTempFile("benchmark", ".arff");
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Benchmark
+    public ArffDataModel arffBuilder(SelectedState state) {
+        state.main.arffBuilder().accept(state.index);
+        return state.main.getArffDataModel();
+    }
+
+    @Benchmark
+    public String arffDataModelToString(DataModelState state) {
+        return state.dataModel.toString();
+    }
+
+    @Benchmark
+    public long arffStreamer(SelectedState state, OutputState output) {
+        state.main.arffStreamer(output.file, "benchmark").accept(state.index);
+        try {
+            return Files.size(output.file);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
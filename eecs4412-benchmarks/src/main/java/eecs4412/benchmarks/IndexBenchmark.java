@@ -0,0 +1,53 @@
+package eecs4412.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import eecs4412.project.model.InvertedIndexFile;
+
+/**
+ * InvertedIndexFile.mapTermToDoc over the pre-stemmed mailbox, and trimIndex with the
+ * default percentiles of Main
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class IndexBenchmark {
+
+    /**
+     * a fresh index per call, trimIndex changes it
+     */
+    @State(Scope.Thread)
+    public static class IndexState {
+        InvertedIndexFile index;
+
+        @Setup(Level.Invocation)
+        public void setUp(MailboxState mailbox) {
+            index = mailbox.buildIndex();
+        }
+    }
+
+    @Benchmark
+    public InvertedIndexFile mapTermToDoc(MailboxState mailbox) {
+        return mailbox.buildIndex();
+    }
+
+    @Benchmark
+    public int trimIndex(IndexState state) {
+        int documents = state.index.getDocumentCount();
+        return state.index.trimIndex((int) (0.01 * documents), (int) (0.59 * documents));
+    }
+}
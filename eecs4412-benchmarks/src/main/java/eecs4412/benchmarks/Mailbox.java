@@ -0,0 +1,42 @@
+package eecs4412.benchmarks;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import eecs4412.project.util.CorpusGenerator;
+
+/**
+ * Seeded in-memory mailbox of the emails CorpusGenerator would write to disk, so every
+ * run benchmarks the same text.
+ */
+public class Mailbox {
+
+    private final List<String> names = new ArrayList<>();
+    private final List<String> texts = new ArrayList<>();
+
+    /**
+     *
+     * @param documents number of emails
+     * @param seed
+     * @throws IOException
+     */
+    public Mailbox(int documents, long seed) throws IOException {
+        CorpusGenerator generator = new CorpusGenerator(seed, CorpusGenerator.DEFAULT_VOCABULARY_SIZE);
+        StringBuilder text = new StringBuilder();
+        for(int doc = 0; doc < documents; doc++){
+            text.setLength(0);
+            generator.write(doc, text);
+            names.add(generator.name(doc));
+            texts.add(text.toString());
+        }
+    }
+
+    public List<String> getNames() {
+        return names;
+    }
+
+    public List<String> getTexts() {
+        return texts;
+    }
+}
@@ -0,0 +1,105 @@
+package eecs4412.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import eecs4412.project.model.InvertedIndexFile;
+import eecs4412.project.util.Tokenizer;
+
+/**
+ * The small, medium and large mailboxes shared by every benchmark, with the stop words
+ * and the stemmed terms of every email precomputed.
+ * The stop words are read from the file of the stopWords system property, by default
+ * the list of eecs4412-project; a missing file fails the trial.
+ */
+@State(Scope.Benchmark)
+public class MailboxState {
+
+    public static final long SEED = 4412;
+
+    @Param({"small", "medium", "large"})
+    public String size;
+
+    public List<String> names;
+    public List<String> texts;
+    public List<List<String>> lines;
+    public String[] words;
+    public Set<String> stopWords;
+    public String[][] terms;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        Mailbox mailbox;
+        switch(size){
+        case "small":
+            mailbox = new Mailbox(100, SEED);
+            break;
+        case "medium":
+            mailbox = new Mailbox(1000, SEED);
+            break;
+        default:
+            mailbox = new Mailbox(10000, SEED);
+        }
+        names = mailbox.getNames();
+        texts = mailbox.getTexts();
+        lines = texts.stream()
+                .map(text -> Arrays.asList(text.split("\n")))
+                .collect(Collectors.toList());
+        words = texts.stream()
+                .flatMap(text -> Arrays.stream(text.split("[^A-Za-z]+")))
+                .filter(word -> !word.isEmpty())
+                .map(String::toLowerCase)
+                .toArray(String[]::new);
+        stopWords = readStopWords(Paths.get(System.getProperty("stopWords", "../eecs4412-project/input/stop-word-list.csv")));
+        Tokenizer tokenizer = new Tokenizer(stopWords);
+        terms = new String[texts.size()][];
+        for(int doc = 0; doc < texts.size(); doc++){
+            List<String> docTerms = new ArrayList<>();
+            tokenizer.tokenize(texts.get(doc), (buffer, offset, length) -> docTerms.add(new String(buffer, offset, length)));
+            terms[doc] = docTerms.toArray(new String[0]);
+        }
+    }
+
+    /**
+     *
+     * @return a new index of the whole mailbox
+     */
+    public InvertedIndexFile buildIndex() {
+        InvertedIndexFile index = new InvertedIndexFile();
+        for(int doc = 0; doc < terms.length; doc++){
+            String document = names.get(doc);
+            for(String term : terms[doc]){
+                index.mapTermToDoc(term, document);
+            }
+        }
+        return index;
+    }
+
+    // *** helper method
+    private static Set<String> readStopWords(Path file) throws IOException {
+        if(!Files.isRegularFile(file)){
+            throw new IOException("no stop-word file at " + file.toAbsolutePath() + ", set -DstopWords to its path");
+        }
+        return new HashSet<>(Files.readAllLines(file)
+                .stream()
+                .map(line -> line.split("[,|\\s+]"))
+                .flatMap(Arrays::stream)
+                .map(String::toLowerCase)
+                .filter(word -> !word.trim().isEmpty())
+                .collect(Collectors.toSet()));
+    }
+}
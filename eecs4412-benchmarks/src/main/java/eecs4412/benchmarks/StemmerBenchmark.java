@@ -0,0 +1,45 @@
+package eecs4412.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import eecs4412.project.util.PorterStemmer;
+
+/**
+ * PorterStemmer over every word of the mailbox, through the String and the char[] API
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class StemmerBenchmark {
+
+    @Benchmark
+    public void stemString(MailboxState mailbox, Blackhole blackhole) {
+        PorterStemmer stemmer = new PorterStemmer();
+        for(String word : mailbox.words){
+            blackhole.consume(stemmer.stem(word));
+        }
+    }
+
+    @Benchmark
+    public void stemChars(MailboxState mailbox, Blackhole blackhole) {
+        PorterStemmer stemmer = new PorterStemmer();
+        char[] buffer = new char[64];
+        for(String word : mailbox.words){
+            int length = Math.min(word.length(), buffer.length);
+            word.getChars(0, length, buffer, 0);
+            stemmer.stem(buffer, 0, length);
+            blackhole.consume(stemmer.getResultLength());
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package eecs4412.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import eecs4412.project.main.Main;
+import eecs4412.project.model.InvertedIndexFile;
+import eecs4412.project.util.Tokenizer;
+
+/**
+ * Tokenizing, stemming and stop-word filtering of the whole mailbox: the line based
+ * extractStemmedNonStopWords against the char based Tokenizer, with and without stem cache
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class TokenizerBenchmark {
+
+    @Benchmark
+    public InvertedIndexFile extractStemmedNonStopWords(MailboxState mailbox) {
+        Main main = new Main();
+        InvertedIndexFile index = new InvertedIndexFile();
+        for(int doc = 0; doc < mailbox.lines.size(); doc++){
+            main.extractStemmedNonStopWords(mailbox.names.get(doc), mailbox.stopWords, index)
+                    .apply(mailbox.lines.get(doc));
+        }
+        return index;
+    }
+
+    @Benchmark
+    public void tokenize(MailboxState mailbox, Blackhole blackhole) {
+        tokenize(new Tokenizer(mailbox.stopWords), mailbox, blackhole);
+    }
+
+    @Benchmark
+    public void tokenizeCached(MailboxState mailbox, Blackhole blackhole) {
+        tokenize(new Tokenizer(mailbox.stopWords, 1 << 16), mailbox, blackhole);
+    }
+
+    // *** helper method
+    private static void tokenize(Tokenizer tokenizer, MailboxState mailbox, Blackhole blackhole) {
+        Tokenizer.TermConsumer consumer = (buffer, offset, length) -> blackhole.consume(length);
+        for(String text : mailbox.texts){
+            tokenizer.tokenize(text, consumer);
+        }
+    }
+}
@@ -5,116 +5,772 @@ import static eecs4412.project.util.Util.*;
 import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.UncheckedIOException;
-import java.nio.charset.Charset;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
-import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
+import java.util.function.BiFunction;
 import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.function.ObjIntConsumer;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
+import javax.management.JMException;
+
 import eecs4412.project.model.ArffDataModel;
+import eecs4412.project.model.ArffWriter;
+import eecs4412.project.model.CellEncoder;
+import eecs4412.project.model.ClassificationReport;
+import eecs4412.project.model.ForwardIndex;
 import eecs4412.project.model.InvertedIndexFile;
+import eecs4412.project.model.MappedInvertedIndex;
+import eecs4412.project.model.NaiveBayesClassifier;
+import eecs4412.project.model.SpimiIndexBuilder;
 import eecs4412.project.model.TermData;
+import eecs4412.project.model.VocabularyModel;
+import eecs4412.project.model.WeightingScheme;
+import eecs4412.project.util.ByteFileReader;
+import eecs4412.project.util.EmailClassifier;
+import eecs4412.project.util.PipelineMetrics;
 import eecs4412.project.util.PorterStemmer;
+import eecs4412.project.util.Tokenizer;
+import eecs4412.project.util.Vectorizer;
 
 public class Main {
     
+    // documents weighed and formatted per task when rows are written in parallel
+    private static final int ROW_CHUNK_SIZE = 1024;
+
     // *** Fields
     private InvertedIndexFile invertedIndexFile;
     private Set<String> stopWords = new HashSet<>();
     private double upperPercentile = DEFAULT_UPPER_PERCENTILE;
     private double lowerPercentile = DEFAULT_LOWER_PERCENTILE;
-    private ArffDataModel arffDataModel;
+    private ArffDataModel arffDataModel = new ArffDataModel("email-filter");
     private Set<String> selectedAttributes = new TreeSet<>();
+    private VocabularyModel vocabularyModel;
+    private NaiveBayesClassifier classifier;
+    private int threads = DEFAULT_THREADS;
+    private boolean sparse = false;
+    private boolean streaming = false;
+    private WeightingScheme weightingScheme = WeightingScheme.TF_IDF;
+    private int significantDigits = 0;
+    private int quantizationBits = 0;
+    private int stemCacheSize = DEFAULT_STEM_CACHE_SIZE;
+    private PipelineMetrics metrics = PipelineMetrics.DISABLED;
+    private final Collection<Tokenizer> tokenizers = new ConcurrentLinkedQueue<>();
+    private ThreadLocal<Tokenizer> threadTokenizer = newThreadTokenizer();
     
     /**
-     * Produce test ARFF file to outputPath form inputPath
+     * Produce test ARFF file to outputPath form inputPath, weighting every email against
+     * the vocabularyModel of the training phase; only attribute terms are counted and
+     * no index of the test emails is built. Emails are read lazily, one row at a time
      * @param inputPath
      * @throws IOException
      */
     public void test(Path inputPath, Path outputPath) throws IOException{
-        invertedIndexFile = new InvertedIndexFile();
-        arffDataModel = new ArffDataModel("email-filter-test");
-        if(Files.isDirectory(inputPath)){
-            Files.newDirectoryStream(inputPath, FILES_ONLY)
-            .forEach(filePreprocessor());
-        } else {
-            filePreprocessor().accept(inputPath);
+        Objects.requireNonNull(vocabularyModel, "no vocabulary model, train or load one first");
+        try(ArffWriter writer = new ArffWriter(outputPath, sparse, cellEncoder())){
+            writer.writeHeader("email-filter-test", vocabularyModel.getTerms());
+            Consumer<Path> scorer = fileScorer(new Vectorizer(vocabularyModel, threadTokenizer.get()), writer);
+            if(!Files.isDirectory(inputPath)){
+                scorer.accept(inputPath);
+                return;
+            }
+            try(DirectoryStream<Path> files = Files.newDirectoryStream(inputPath, FILES_ONLY)){
+                files.forEach(scorer);
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
         }
-        arffBuilder().accept(invertedIndexFile);
-        fileProducer(outputPath).accept(arffDataModel.toString());
-        fileProducer(outputPath.getParent().resolve("testInvertedIndexFile.txt")).accept(invertedIndexFile.toString());
     }
 
+    /**
+     * Keep running, turning every email that lands in spoolPath into a test row, and a 
+     * prediction when classify is set, appended to rolling files in outputPath
+     * @param spoolPath
+     * @param outputPath
+     * @param classify
+     * @throws IOException
+     */
+    public void daemon(Path spoolPath, Path outputPath, boolean classify) throws IOException{
+        Objects.requireNonNull(vocabularyModel, "no vocabulary model, train or load one first");
+        if(classify){
+            Objects.requireNonNull(classifier, "no classifier, train or load one first");
+        }
+        Tokenizer tokenizer = threadTokenizer.get();
+        SpoolDaemon daemon = new SpoolDaemon(spoolPath, outputPath, new Vectorizer(vocabularyModel, tokenizer),
+                classify ? new EmailClassifier(classifier, tokenizer) : null, sparse, cellEncoder(), 
+                SpoolDaemon.DEFAULT_ROWS_PER_FILE);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                daemon.close();
+            } catch (IOException e) {
+                PRINTER.accept("Could not close the output in " + outputPath + ": " + e.getMessage());
+            }
+            PRINTER.accept(String.format("Processed %d emails, %.3f ms/email", daemon.getEmails(), daemon.getMillisPerEmail()));
+        }));
+        PRINTER.accept("Watching " + spoolPath);
+        daemon.run();
+    }
+
+    /**
+     * Load the vocabulary model of a previous train run, used by test instead of training, 
+     * and the trainClassifier.bin next to it if there is one
+     * @param modelPath
+     * @throws IOException
+     */
+    public void loadModel(Path modelPath) throws IOException{
+        vocabularyModel = VocabularyModel.load(modelPath);
+        Path classifierPath = modelPath.resolveSibling("trainClassifier.bin");
+        if(Files.isRegularFile(classifierPath)){
+            classifier = NaiveBayesClassifier.load(classifierPath);
+        }
+    }
+
+    /**
+     * Classify the emails of inputPath with the Naive Bayes classifier of the training phase,
+     * writing one "email,label" line per email to outputPath
+     * @param inputPath
+     * @param outputPath
+     * @return accuracy and throughput against the labels of the email names
+     * @throws IOException
+     */
+    public ClassificationReport classify(Path inputPath, Path outputPath) throws IOException{
+        Objects.requireNonNull(classifier, "no classifier, train or load one first");
+        EmailClassifier emailClassifier = new EmailClassifier(classifier, threadTokenizer.get());
+        try(BufferedWriter w = Files.newBufferedWriter(outputPath)){
+            ObjIntConsumer<Path> predictionWriter = (file, predicted) -> {
+                try {
+                    w.write(file.getFileName().toString());
+                    w.write(',');
+                    w.write(NaiveBayesClassifier.LABELS[predicted]);
+                    w.newLine();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            };
+            if(!Files.isDirectory(inputPath)){
+                return emailClassifier.classifyAll(Collections.singletonList(inputPath), predictionWriter);
+            }
+            try(DirectoryStream<Path> files = Files.newDirectoryStream(inputPath, FILES_ONLY)){
+                return emailClassifier.classifyAll(files, predictionWriter);
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
     
     /**
-     * Produce train ARFF file to outputPath form inputPath
+     * Produce train ARFF file to outputPath form inputPath, and save the index 
+     * as trainInvertedIndex.bin next to it
      * @param inputPath
      * @param stopWordsPath
      * @throws IOException
      */
     public void train(Path inputPath, Path outputPath) throws IOException{
         invertedIndexFile = new InvertedIndexFile();
-        arffDataModel = new ArffDataModel("email-filter-train");
-        if(Files.isDirectory(inputPath)){
-            Files.newDirectoryStream(inputPath, FILES_ONLY)
-            .forEach(filePreprocessor());
+        ingest(inputPath);
+        // saved before wordSelector trims it, so selection can be re-run from it
+        MappedInvertedIndex.write(invertedIndexFile, outputPath.getParent().resolve("trainInvertedIndex.bin"));
+        trainOutput(outputPath);
+    }
+
+    /**
+     * Produce train ARFF file to outputPath form inputPath without holding the postings of 
+     * the training emails in memory: blocks of memoryBudget bytes are spilled as sorted runs 
+     * and merged into trainInvertedIndex.bin. The train outputs are then written through the
+     * mapping of that file, the rows a chunk of documents at a time, so the index is never
+     * loaded into the heap
+     * @param inputPath
+     * @param outputPath
+     * @param memoryBudget
+     * @throws IOException
+     */
+    public void trainOutOfCore(Path inputPath, Path outputPath, long memoryBudget) throws IOException{
+        Path indexPath = outputPath.getParent().resolve("trainInvertedIndex.bin");
+        try(SpimiIndexBuilder builder = new SpimiIndexBuilder(outputPath.getParent().resolve("spimi-runs"), memoryBudget)){
+            Consumer<Path> preprocessor = filePreprocessor(builder.getBlock());
+            List<Path> files = new ArrayList<>();
+            if(Files.isDirectory(inputPath)){
+                try(DirectoryStream<Path> stream = Files.newDirectoryStream(inputPath, FILES_ONLY)){
+                    stream.forEach(files::add);
+                }
+            } else {
+                files.add(inputPath);
+            }
+            for(Path file : files){
+                preprocessor.accept(file);
+                if(builder.endDocument()){
+                    preprocessor = filePreprocessor(builder.getBlock());
+                }
+            }
+            builder.finish(indexPath);
+            PRINTER.accept(String.format("Merged %d index runs", builder.getRunCount()));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        try(MappedInvertedIndex index = MappedInvertedIndex.open(indexPath)){
+            metrics.setUniqueTerms(index.getTermCount());
+            trainOutput(index, outputPath);
+        }
+    }
+
+    /**
+     * Produce train ARFF file to outputPath from the binary index of a previous train run,
+     * without reading the training emails again; only the terms wordSelector keeps are loaded
+     * @param index
+     * @param outputPath
+     * @throws IOException
+     */
+    public void train(MappedInvertedIndex index, Path outputPath) throws IOException{
+        invertedIndexFile = index.toInvertedIndexFile((int) (lowerPercentile * index.getDocumentCount()),
+                (int) (upperPercentile * index.getDocumentCount()));
+        trainOutput(outputPath);
+    }
+
+    /**
+     * Produce train ARFF file to outputPath from a previously saved index plus the emails 
+     * of inputPath it has not seen yet, by name, size and modification time. Changed emails
+     * and the emails no longer in inputPath are dropped from the index in one pass over its
+     * postings; new and changed emails are indexed apart and merged in, after the others.
+     * The updated index replaces trainInvertedIndex.bin.
+     * @param inputPath
+     * @param indexPath index to start from, trainInvertedIndex.bin next to outputPath if null
+     * @param outputPath
+     * @throws IOException
+     */
+    public void trainIncremental(Path inputPath, Path indexPath, Path outputPath) throws IOException{
+        Path savedIndex = outputPath.getParent().resolve("trainInvertedIndex.bin");
+        Path previousIndex = indexPath != null ? indexPath : savedIndex;
+        InvertedIndexFile index;
+        if(Files.isRegularFile(previousIndex)){
+            try(MappedInvertedIndex mappedIndex = MappedInvertedIndex.open(previousIndex)){
+                index = mappedIndex.toInvertedIndexFile();
+            }
         } else {
-            filePreprocessor().accept(inputPath);
+            index = new InvertedIndexFile();
+        }
+        int[] added = new int[1];
+        BitSet unchanged = new BitSet(index.getDocumentCount());
+        invertedIndexFile = new InvertedIndexFile();
+        ingest(inputPath, file -> {
+            if(isUnseen(index, file, unchanged)){
+                added[0]++;
+                return true;
+            }
+            return false;
+        });
+        BitSet dropped = new BitSet(index.getDocumentCount());
+        dropped.set(0, index.getDocumentCount());
+        dropped.andNot(unchanged);
+        int removed = index.removeDocuments(dropped);
+        index.merge(invertedIndexFile);
+        invertedIndexFile = index;
+        metrics.setUniqueTerms(invertedIndexFile.getTermCount());
+        PRINTER.accept(String.format("Indexed %d new or changed emails, dropped %d changed or deleted ones", 
+                added[0], removed));
+        MappedInvertedIndex.write(invertedIndexFile, savedIndex);
+        trainOutput(outputPath);
+    }
+
+    /**
+     * 
+     * @param index
+     * @param file
+     * @param unchanged docIds of the files found unchanged, file's is set if it is
+     * @return true unless the index holds the file with the same size and modification time
+     */
+    private boolean isUnseen(InvertedIndexFile index, Path file, BitSet unchanged) {
+        int docId = index.getDocumentDictionary().lookup(file.getFileName().toString());
+        if(docId < 0){
+            return true;
+        }
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            if(attributes.size() == index.getDocumentSize(docId) 
+                    && attributes.lastModifiedTime().toMillis() == index.getDocumentLastModified(docId)){
+                unchanged.set(docId);
+                return false;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
+        return true;
+    }
+
+    /**
+     * Select the attributes of the invertedIndexFile and write the train outputs, 
+     * including the vocabulary model as trainModel.bin and the Naive Bayes classifier 
+     * as trainClassifier.bin; the max weight of a training cell is measured first when 
+     * the weights are quantized
+     * @param outputPath
+     * @throws IOException
+     */
+    private void trainOutput(Path outputPath) throws IOException{
         wordSelector().accept(invertedIndexFile);
-        arffBuilder().accept(invertedIndexFile);
-        fileProducer(outputPath).accept(arffDataModel.toString());
-        fileProducer(outputPath.getParent().resolve("trainInvertedIndexFile.txt")).accept(invertedIndexFile.toString());
+        vocabularyModel = VocabularyModel.build(invertedIndexFile, selectedAttributes, weightingScheme);
+        if(quantizationBits != 0){
+            vocabularyModel = vocabularyModel.withMaxWeight(maxWeight(invertedIndexFile));
+        }
+        vocabularyModel.save(outputPath.getParent().resolve("trainModel.bin"));
+        classifier = NaiveBayesClassifier.train(invertedIndexFile, selectedAttributes);
+        classifier.save(outputPath.getParent().resolve("trainClassifier.bin"));
+        arffStreamer(outputPath, "email-filter-train").accept(invertedIndexFile);
+        indexDumper(outputPath.getParent().resolve("trainInvertedIndexFile.txt")).accept(invertedIndexFile);
+    }
+
+    /**
+     * Select the attributes of a mapped index and write the same train outputs as
+     * trainOutput(Path), reading the postings of the selected terms through the mapping:
+     * the rows are weighed from forward indexes of ROW_CHUNK_SIZE documents at a time
+     * @param index
+     * @param outputPath
+     * @throws IOException
+     */
+    private void trainOutput(MappedInvertedIndex index, Path outputPath) throws IOException{
+        long start = metrics.now();
+        int[] termIndexes = index.getTermIndexes((int) (lowerPercentile * index.getDocumentCount()),
+                (int) (upperPercentile * index.getDocumentCount()));
+        for(int termIndex : termIndexes){
+            selectedAttributes.add(index.getTerm(termIndex));
+        }
+        metrics.record(PipelineMetrics.Stage.SELECT, start);
+        vocabularyModel = VocabularyModel.build(index, termIndexes, weightingScheme);
+        if(quantizationBits != 0){
+            double[] max = new double[1];
+            forEachRow(index.getDocumentCount(), vocabularyModel, index.documentReader(termIndexes)::read, 
+                    (values, docId) -> max[0] = Math.max(max[0], maxValue(values)));
+            vocabularyModel = vocabularyModel.withMaxWeight(max[0]);
+        }
+        vocabularyModel.save(outputPath.getParent().resolve("trainModel.bin"));
+        classifier = NaiveBayesClassifier.train(index, termIndexes);
+        classifier.save(outputPath.getParent().resolve("trainClassifier.bin"));
+        writeArff(outputPath, "email-filter-train", index.getDocuments(), vocabularyModel, 
+                index.documentReader(termIndexes)::read);
+        start = metrics.now();
+        try(BufferedWriter w = Files.newBufferedWriter(outputPath.getParent().resolve("trainInvertedIndexFile.txt"))){
+            index.writeTo(w, termIndexes);
+        }
+        metrics.record(PipelineMetrics.Stage.WRITE, start);
     }
     
+    /**
+     * Index the emails in inputPath into the invertedIndexFile, using a pool of 
+     * worker threads when more than one thread is configured
+     * @param inputPath
+     * @throws IOException
+     */
+    public void ingest(Path inputPath) throws IOException {
+        ingest(inputPath, file -> true);
+    }
+
+    /**
+     * Index the emails in inputPath accepted by filter into the invertedIndexFile
+     * @param inputPath
+     * @param filter evaluated on the calling thread, before any worker starts
+     * @throws IOException
+     */
+    public void ingest(Path inputPath, Predicate<Path> filter) throws IOException {
+        try {
+            ingestFiles(inputPath, filter);
+        } finally {
+            metrics.setUniqueTerms(invertedIndexFile.getTermCount());
+        }
+    }
+
+    /**
+     * 
+     * @param inputPath
+     * @param filter
+     * @throws IOException
+     */
+    private void ingestFiles(Path inputPath, Predicate<Path> filter) throws IOException {
+        if(!Files.isDirectory(inputPath)){
+            if(filter.test(inputPath)){
+                filePreprocessor().accept(inputPath);
+            }
+            return;
+        }
+        DirectoryStream.Filter<Path> accepted = file -> FILES_ONLY.accept(file) && filter.test(file);
+        if(threads <= 1){
+            try(DirectoryStream<Path> files = Files.newDirectoryStream(inputPath, accepted)){
+                files.forEach(filePreprocessor());
+            }
+            return;
+        }
+        List<Path> files = new ArrayList<>();
+        try(DirectoryStream<Path> stream = Files.newDirectoryStream(inputPath, accepted)){
+            stream.forEach(files::add);
+        }
+        // contiguous chunks, each indexed into its own partial index and merged 
+        // back in order, so no lock is taken while tokenizing
+        int chunkCount = Math.min(files.size(), threads * 4);
+        List<Future<InvertedIndexFile>> partials = new ArrayList<>(chunkCount);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            for(int chunk = 0; chunk < chunkCount; chunk++){
+                List<Path> slice = files.subList(chunk * files.size() / chunkCount, 
+                        (chunk + 1) * files.size() / chunkCount);
+                partials.add(pool.submit(() -> {
+                    InvertedIndexFile partial = new InvertedIndexFile();
+                    slice.forEach(filePreprocessor(partial));
+                    return partial;
+                }));
+            }
+            for(Future<InvertedIndexFile> partial : partials){
+                invertedIndexFile.merge(partial.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            if(e.getCause() instanceof UncheckedIOException){
+                throw ((UncheckedIOException)e.getCause()).getCause();
+            }
+            throw new IOException(e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
     /**
      * Build ARFF file from the InvertedIndexFile
      * @return
      */
     public Consumer<InvertedIndexFile> arffBuilder() {
         return (indexFile)->{
-            Map<String, TermData> terms = indexFile.getTermMap();
-            Collection<String> docs = indexFile.getDocuments();
-            final double maxTermFrequency = (double)indexFile.getMaxTermFrequency();
-            final double documentCount = (double)indexFile.getDocumentCount();
-            docs.stream()
-                .forEach(doc -> {
-                    TreeMap<String, Object> row = new TreeMap<>();
-                    selectedAttributes.stream()
-                         .forEach(term -> {
-                             TermData termData = terms.get(term); 
-                             double termWeight = tfidf(termData.getTermFrequencyInDocument(doc), 
-                                     termData.getDocumentFrequency(), maxTermFrequency, documentCount);
-                             row.put(String.format("'%s'", termData.getTerm()), termWeight);
-                         });
-                    row.put("class", doc.toLowerCase().contains("ham") ? "H" : "S");
-                    arffDataModel.addRow(row);
-                });
+            List<String> docs = indexFile.getDocuments();
+            arffDataModel.setAttributes(new ArrayList<>(selectedAttributes));
+            forEachRow(indexFile, (values, docId) -> arffDataModel.addRow(values, classLabel(docs.get(docId))));
+        };
+    }
+
+    /**
+     * Write the ARFF file of the InvertedIndexFile to outputPath one row at a time, 
+     * without building an ArffDataModel
+     * @param outputPath
+     * @param relationName
+     * @return
+     */
+    public Consumer<InvertedIndexFile> arffStreamer(Path outputPath, String relationName) {
+        return (indexFile)->{
+            try {
+                writeArff(outputPath, relationName, indexFile.getDocuments(), 
+                        VocabularyModel.build(indexFile, selectedAttributes, weightingScheme), forwardIndex(indexFile));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        };
+    }
+
+    /**
+     * Writes the ARFF file of the documents to outputPath one row at a time, with the
+     * threads when more than one is configured
+     * @param outputPath
+     * @param relationName
+     * @param docs document names in docId order
+     * @param model attributes and weighting of the rows
+     * @param vectors forward index keyed by column of the documents [first, last), asked
+     * for chunk after chunk in docId order
+     * @throws IOException
+     */
+    private void writeArff(Path outputPath, String relationName, List<String> docs, VocabularyModel model,
+            BiFunction<Integer, Integer, ForwardIndex> vectors) throws IOException {
+        try(ArffWriter writer = new ArffWriter(outputPath, sparse, cellEncoder())){
+            writer.writeHeader(relationName, model.getTerms());
+            if(threads > 1){
+                writeRows(docs, model, vectors, writer);
+                return;
+            }
+            forEachRow(docs.size(), model, vectors, (values, docId) -> {
+                try {
+                    long start = metrics.now();
+                    writer.writeRow(values, classLabel(docs.get(docId)));
+                    metrics.record(PipelineMetrics.Stage.WRITE, start);
+                    metrics.addRow();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Computes the weights of the selected attributes for every document, reusing one 
+     * array; attributes missing from the index weigh 0. The IDF table is computed once, 
+     * and a forward index of the attribute postings only, then each row is weighed by the
+     * weightingScheme over the attributes it contains
+     * @param indexFile
+     * @param rowConsumer receives the weights and the document id
+     */
+    private void forEachRow(InvertedIndexFile indexFile, ObjIntConsumer<double[]> rowConsumer) {
+        forEachRow(indexFile.getDocumentCount(), VocabularyModel.build(indexFile, selectedAttributes, weightingScheme),
+                forwardIndex(indexFile), rowConsumer);
+    }
+
+    /**
+     * Computes the weights of the model attributes for every document, a chunk of 
+     * documents at a time, reusing one array
+     * @param documentCount
+     * @param model
+     * @param vectors forward index keyed by column of the documents [first, last)
+     * @param rowConsumer receives the weights and the document id
+     */
+    private void forEachRow(int documentCount, VocabularyModel model, BiFunction<Integer, Integer, ForwardIndex> vectors,
+            ObjIntConsumer<double[]> rowConsumer) {
+        RowWeigher weigher = new RowWeigher(model);
+        for(int first = 0; first < documentCount; first += ROW_CHUNK_SIZE){
+            int last = Math.min(documentCount, first + ROW_CHUNK_SIZE);
+            ForwardIndex forwardIndex = vectors.apply(first, last);
+            for(int docId = first; docId < last; docId++){
+                long start = metrics.now();
+                double[] row = weigher.weigh(forwardIndex, docId);
+                metrics.record(PipelineMetrics.Stage.ARFF, start);
+                rowConsumer.accept(row, docId);
+            }
+        }
+    }
+
+    /**
+     * 
+     * @param indexFile
+     * @return the forward index of the selected attributes of indexFile, keyed by column, 
+     * built once and shared by every chunk of documents
+     */
+    private BiFunction<Integer, Integer, ForwardIndex> forwardIndex(InvertedIndexFile indexFile) {
+        TermData[] terms = selectedAttributes.stream()
+                .map(indexFile::getTermData)
+                .toArray(TermData[]::new);
+        ForwardIndex forwardIndex = ForwardIndex.of(terms);
+        return (first, last) -> forwardIndex;
+    }
+
+    /**
+     * Writes the rows of the documents using the threads: contiguous chunks of documents
+     * are weighed and formatted on a fork-join pool, each into its own buffer, and the 
+     * buffers are written in document order, so the file is the same whatever the number
+     * of threads. The forward index of a chunk is asked for on the calling thread, in 
+     * docId order, before the chunk is submitted
+     * @param docs document names in docId order
+     * @param model
+     * @param vectors forward index keyed by column of the documents [first, last)
+     * @param writer header already written
+     * @throws IOException
+     */
+    private void writeRows(List<String> docs, VocabularyModel model, BiFunction<Integer, Integer, ForwardIndex> vectors,
+            ArffWriter writer) throws IOException {
+        ThreadLocal<RowWeigher> weighers = ThreadLocal.withInitial(() -> new RowWeigher(model));
+        CellEncoder encoder = cellEncoder();
+        ThreadLocal<CellEncoder> encoders = ThreadLocal.withInitial(encoder::copy);
+        String lineSeparator = System.lineSeparator();
+        int documentCount = docs.size();
+        // chunks in flight are bounded, the buffers of a huge index are not all held at once
+        Deque<ForkJoinTask<StringBuilder>> window = new ArrayDeque<>();
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            int next = 0;
+            while(next < documentCount || !window.isEmpty()){
+                while(next < documentCount && window.size() < threads * 2){
+                    int first = next;
+                    int last = Math.min(documentCount, first + ROW_CHUNK_SIZE);
+                    ForwardIndex forwardIndex = vectors.apply(first, last);
+                    window.add(pool.submit(() -> {
+                        RowWeigher weigher = weighers.get();
+                        CellEncoder rowEncoder = encoders.get();
+                        StringBuilder chunk = new StringBuilder();
+                        for(int docId = first; docId < last; docId++){
+                            long start = metrics.now();
+                            double[] row = weigher.weigh(forwardIndex, docId);
+                            start = metrics.record(PipelineMetrics.Stage.ARFF, start);
+                            ArffWriter.formatRow(chunk.append(lineSeparator), row, classLabel(docs.get(docId)), sparse, rowEncoder);
+                            metrics.record(PipelineMetrics.Stage.WRITE, start);
+                            metrics.addRow();
+                        }
+                        return chunk;
+                    }));
+                    next = last;
+                }
+                StringBuilder chunk = window.poll().get();
+                long start = metrics.now();
+                writer.writeRows(chunk);
+                // one sample per chunk, kept apart from the per row WRITE samples
+                metrics.record(PipelineMetrics.Stage.WRITE_CHUNK, start);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            if(e.getCause() instanceof UncheckedIOException){
+                throw ((UncheckedIOException)e.getCause()).getCause();
+            }
+            throw new IOException(e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * 
+     * @param indexFile
+     * @return the largest weight of a cell of the selected attributes over the documents
+     */
+    private double maxWeight(InvertedIndexFile indexFile) {
+        double[] max = new double[1];
+        forEachRow(indexFile, (values, docId) -> max[0] = Math.max(max[0], maxValue(values)));
+        return max[0];
+    }
+
+    /**
+     * 
+     * @param values
+     * @return the largest of values, 0 if none is above it
+     */
+    private static double maxValue(double[] values) {
+        double max = 0d;
+        for(double value : values){
+            max = Math.max(max, value);
+        }
+        return max;
+    }
+
+    /**
+     * 
+     * @return text of the ARFF cells: quantized against the max weight of the vocabularyModel,
+     * rounded to significantDigits, or the shortest exact decimal
+     */
+    private CellEncoder cellEncoder() {
+        if(quantizationBits != 0){
+            if(vocabularyModel == null || vocabularyModel.getMaxWeight() <= 0d){
+                throw new IllegalStateException("the vocabulary model records no max weight to quantize against, train it with quantization");
+            }
+            return CellEncoder.quantized(quantizationBits, vocabularyModel.getMaxWeight());
+        }
+        return significantDigits != 0 ? CellEncoder.digits(significantDigits) : CellEncoder.FULL;
+    }
+
+    /**
+     * Weighs the rows of an index from a forward index of its attributes, keyed by
+     * column, into one reused array: each document only visits its own attributes, and 
+     * the columns it set are cleared when the next one is weighed. One instance per thread
+     */
+    private static final class RowWeigher {
+        private final VocabularyModel model;
+        private final double[] row;
+        private final int[] rowColumns;
+        private final int[] rowFrequencies;
+        private int count;
+
+        RowWeigher(VocabularyModel model) {
+            this.model = model;
+            this.row = new double[model.size()];
+            this.rowColumns = new int[model.size()];
+            this.rowFrequencies = new int[model.size()];
+        }
+
+        double[] weigh(ForwardIndex forwardIndex, int docId) {
+            for(int i = 0; i < count; i++){
+                row[rowColumns[i]] = 0d;
+            }
+            count = forwardIndex.size(docId);
+            for(int k = 0; k < count; k++){
+                rowColumns[k] = forwardIndex.getTermId(docId, k);
+                rowFrequencies[k] = forwardIndex.getFrequency(docId, k);
+            }
+            model.weigh(rowColumns, rowFrequencies, count, row);
+            return row;
+        }
+    }
+
+    /**
+     * ham/spam label of a document, from its name
+     * @param document
+     * @return
+     */
+    private String classLabel(String document) {
+        return NaiveBayesClassifier.LABELS[NaiveBayesClassifier.classOf(document)];
+    }
+
+    /**
+     * Consume the passed in PATH into one ARFF row of the vectorizer attributes, 
+     * flushed right away in streaming mode
+     * @param vectorizer
+     * @param writer
+     * @return
+     */
+    private Consumer<Path> fileScorer(Vectorizer vectorizer, ArffWriter writer){
+        return (file) ->{
+            try {
+                double[] row = vectorizer.vectorize(file);
+                long start = metrics.now();
+                writer.writeRow(row, classLabel(file.getFileName().toString()));
+                if(streaming){
+                    writer.flush();
+                }
+                metrics.record(PipelineMetrics.Stage.WRITE, start);
+                metrics.addRow();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
         };
     }
 
     /**
-     * Consume the passed in PATH by extractStemmedNonStopWords
+     * Consume the passed in PATH into the invertedIndexFile
      * @return
      */
     public Consumer<Path> filePreprocessor(){
+        return filePreprocessor(invertedIndexFile);
+    }
+
+    /**
+     * Consume the passed in PATH into the given index, tokenizing and stemming the raw 
+     * file bytes without decoding lines or creating a String per token
+     * @param index
+     * @return
+     */
+    public Consumer<Path> filePreprocessor(InvertedIndexFile index){
+        final ByteFileReader reader = new ByteFileReader(metrics);
         return (file) ->{
-            Collection<String> fileAsList = null;
+            final Tokenizer tokenizer = threadTokenizer.get();
+            final String document = file.getFileName().toString();
+            final Tokenizer.TermConsumer indexer = (buffer, offset, length) -> {
+                if(index.mapTermToDoc(buffer, offset, length, document) == 1){
+                    metrics.addPosting();
+                }
+            };
             try {
-                fileAsList = Files.readAllLines(file, Charset.forName("ISO-8859-1"));
+                reader.read(file, bytes -> tokenizer.tokenize(bytes, indexer));
+                tokenizer.flush(indexer);
+                BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                index.setDocumentStamp(document, attributes.size(), attributes.lastModifiedTime().toMillis());
             } catch (IOException e) {
                 throw new UncheckedIOException(e);
             }
-            extractStemmedNonStopWords(file.getFileName().toString(), stopWords).apply(fileAsList);
         };
     }
 
@@ -126,11 +782,45 @@ public class Main {
         return  (invertedIndexFile) ->{
             int minDocFrequency = (int) (lowerPercentile * invertedIndexFile.getDocumentCount());
             int maxDocFrequency = (int) (upperPercentile * invertedIndexFile.getDocumentCount());
+            long start = metrics.now();
             invertedIndexFile.trimIndex(minDocFrequency, maxDocFrequency);
             selectedAttributes.addAll(invertedIndexFile.getTerms());
+            metrics.record(PipelineMetrics.Stage.SELECT, start);
         };
     }
 
+    /**
+     * 
+     * @return hit rate of the stem caches of every tokenizer used so far, 0 when disabled
+     */
+    public double getStemCacheHitRate() {
+        long hits = 0;
+        long lookups = 0;
+        for(Tokenizer tokenizer : tokenizers){
+            if(tokenizer.getStemCache() != null){
+                hits += tokenizer.getStemCache().getHits();
+                lookups += tokenizer.getStemCache().getHits() + tokenizer.getStemCache().getMisses();
+            }
+        }
+        return lookups == 0 ? 0d : (double) hits / lookups;
+    }
+
+    /**
+     * One tokenizer, with its stem cache, per ingestion thread; replaced whenever the
+     * stop words, the cache size or the metrics change
+     * @return
+     */
+    private ThreadLocal<Tokenizer> newThreadTokenizer() {
+        final Set<String> words = stopWords;
+        final int cacheSize = stemCacheSize;
+        final PipelineMetrics tokenizerMetrics = metrics;
+        return ThreadLocal.withInitial(() -> {
+            Tokenizer tokenizer = new Tokenizer(words, cacheSize, tokenizerMetrics);
+            tokenizers.add(tokenizer);
+            return tokenizer;
+        });
+    }
+
     /**
      * Read the stop-words dictionary to in memory
      * @param filePath
@@ -144,6 +834,7 @@ public class Main {
                 .map(word -> word.toLowerCase())
                 .filter(word -> !word.trim().isEmpty())
                 .collect(Collectors.toSet());
+        threadTokenizer = newThreadTokenizer();
     }
 
     /**
@@ -153,6 +844,18 @@ public class Main {
      * @throws IOException
      */
     public Function<Collection<String>, Collection<String>> extractStemmedNonStopWords(String document, Collection<String> dictionary){
+        return extractStemmedNonStopWords(document, dictionary, invertedIndexFile);
+    }
+
+    /**
+     * This function extract distinct words in a file into the given index
+     * @param document
+     * @param dictionary
+     * @param index
+     * @return
+     */
+    public Function<Collection<String>, Collection<String>> extractStemmedNonStopWords(String document, 
+            Collection<String> dictionary, InvertedIndexFile index){
         Function<Collection<String>, Collection<String>> extractor = (inputFile) -> {
             final PorterStemmer stemmer = new PorterStemmer();
             Collection<String> words = inputFile
@@ -162,7 +865,7 @@ public class Main {
                     .map(word ->stemmer.stem(word.toLowerCase()))
                     .filter(term -> {
                         if(!term.trim().isEmpty() && !dictionary.contains(term)){
-                            invertedIndexFile.mapTermToDoc(term, document);
+                            index.mapTermToDoc(term, document);
                             return true;
                         }
                         return false;
@@ -202,6 +905,23 @@ public class Main {
         return writer;
     }
     
+    /**
+     * This consumer writes the human-readable dump of an index to fname
+     * @param fname
+     * @return
+     */
+    public Consumer<InvertedIndexFile> indexDumper(Path fname){
+        return (index) ->{
+            long start = metrics.now();
+            try(BufferedWriter w = Files.newBufferedWriter(fname)){
+                index.writeTo(w);
+                metrics.record(PipelineMetrics.Stage.WRITE, start);
+            }catch(IOException ex){
+                throw new UncheckedIOException(ex);
+            }
+        };
+    }
+
     /**
      * This consumer write to fname 
      * @param fname
@@ -218,6 +938,67 @@ public class Main {
         return writer;
     }
     
+    public WeightingScheme getWeightingScheme() {
+        return weightingScheme;
+    }
+
+    /**
+     * weighting of the rows of the next trainings; a loaded model keeps its own
+     * @param weightingScheme
+     */
+    public void setWeightingScheme(WeightingScheme weightingScheme) {
+        this.weightingScheme = weightingScheme;
+    }
+
+    public int getSignificantDigits() {
+        return significantDigits;
+    }
+
+    /**
+     * digits of the ARFF weights written from now on, 0 for the shortest exact decimal
+     * @param significantDigits
+     */
+    public void setSignificantDigits(int significantDigits) {
+        this.significantDigits = significantDigits;
+    }
+
+    public int getQuantizationBits() {
+        return quantizationBits;
+    }
+
+    /**
+     * 8 or 16 to write the ARFF weights as integer levels of the max training weight,
+     * 0 to write them as decimals
+     * @param quantizationBits
+     */
+    public void setQuantizationBits(int quantizationBits) {
+        this.quantizationBits = quantizationBits;
+    }
+
+    public ArffDataModel getArffDataModel() {
+        return arffDataModel;
+    }
+
+    public PipelineMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Collect per-stage metrics from now on, and expose them through JMX
+     * @param metrics
+     */
+    public void setMetrics(PipelineMetrics metrics) {
+        this.metrics = metrics;
+        threadTokenizer = newThreadTokenizer();
+        if(metrics.isEnabled()){
+            try {
+                metrics.register();
+            } catch (JMException e) {
+                PRINTER.accept("Pipeline metrics are not available through JMX: " + e.getMessage());
+            }
+        }
+    }
+
     /**
      * Main function
      * @param args
@@ -236,6 +1017,28 @@ public class Main {
         if(parsed.get(LOWER_PERCENT_ARG) != null){
             instance.lowerPercentile = Double.parseDouble(parsed.get(LOWER_PERCENT_ARG));
          }
+        if(parsed.get(THREADS_ARG) != null){
+            instance.threads = Integer.parseInt(parsed.get(THREADS_ARG));
+         }
+        if(parsed.get(STEM_CACHE_ARG) != null){
+            instance.stemCacheSize = Integer.parseInt(parsed.get(STEM_CACHE_ARG));
+            instance.threadTokenizer = instance.newThreadTokenizer();
+         }
+        if(Boolean.parseBoolean(parsed.get(METRICS_ARG))){
+            instance.setMetrics(new PipelineMetrics());
+        }
+        instance.sparse = Boolean.parseBoolean(parsed.get(SPARSE_ARG));
+        instance.arffDataModel.setSparse(instance.sparse);
+        instance.streaming = Boolean.parseBoolean(parsed.get(STREAM_ARG));
+        if(parsed.get(WEIGHTING_ARG) != null){
+            instance.weightingScheme = WeightingScheme.forName(parsed.get(WEIGHTING_ARG));
+        }
+        if(parsed.get(DIGITS_ARG) != null){
+            instance.significantDigits = Integer.parseInt(parsed.get(DIGITS_ARG));
+        }
+        if(parsed.get(QUANTIZE_ARG) != null){
+            instance.quantizationBits = Integer.parseInt(parsed.get(QUANTIZE_ARG));
+        }
         String trainOutPath = DEFAULT_OUT_PATH; 
         String testOutPath = DEFAULT_OUT_PATH;
         if(parsed.get(TRAIN_OUT_FILE_ARG) != null){
@@ -244,8 +1047,38 @@ public class Main {
         if(parsed.get(TEST_OUT_FILE_ARG) != null){
             testOutPath = parsed.get(TEST_OUT_FILE_ARG);
          }
-        instance.train(Paths.get(parsed.get(TRAIN_FILE_ARG)), Paths.get(trainOutPath).resolve("train.arff"));
+        if(parsed.get(MODEL_FILE_ARG) != null){
+            instance.loadModel(Paths.get(parsed.get(MODEL_FILE_ARG)));
+        } else if(Boolean.parseBoolean(parsed.get(INCREMENTAL_ARG))){
+            instance.trainIncremental(Paths.get(parsed.get(TRAIN_FILE_ARG)), 
+                    parsed.get(INDEX_FILE_ARG) != null ? Paths.get(parsed.get(INDEX_FILE_ARG)) : null,
+                    Paths.get(trainOutPath).resolve("train.arff"));
+        } else if(parsed.get(INDEX_FILE_ARG) != null){
+            try(MappedInvertedIndex index = MappedInvertedIndex.open(Paths.get(parsed.get(INDEX_FILE_ARG)))){
+                instance.train(index, Paths.get(trainOutPath).resolve("train.arff"));
+            }
+        } else if(parsed.get(MEMORY_BUDGET_ARG) != null){
+            instance.trainOutOfCore(Paths.get(parsed.get(TRAIN_FILE_ARG)), Paths.get(trainOutPath).resolve("train.arff"),
+                    Long.parseLong(parsed.get(MEMORY_BUDGET_ARG)) << 20);
+        } else {
+            instance.train(Paths.get(parsed.get(TRAIN_FILE_ARG)), Paths.get(trainOutPath).resolve("train.arff"));
+        }
+        if(Boolean.parseBoolean(parsed.get(DAEMON_ARG))){
+            instance.daemon(Paths.get(parsed.get(TEST_FILE_ARG)), Paths.get(testOutPath), 
+                    Boolean.parseBoolean(parsed.get(CLASSIFY_ARG)));
+            return;
+        }
         instance.test(Paths.get(parsed.get(TEST_FILE_ARG)), Paths.get(testOutPath).resolve("test.arff"));
+        if(Boolean.parseBoolean(parsed.get(CLASSIFY_ARG))){
+            PRINTER.accept(instance.classify(Paths.get(parsed.get(TEST_FILE_ARG)), 
+                    Paths.get(testOutPath).resolve("predictions.csv")));
+        }
+        if(instance.stemCacheSize > 0){
+            PRINTER.accept(String.format("Stem cache hit rate: %.2f%%", instance.getStemCacheHitRate() * 100));
+        }
+        if(instance.metrics.isEnabled()){
+            instance.metrics.writeJson(Paths.get(testOutPath).resolve("metrics.json"));
+        }
         PRINTER.accept("Done.");
     }
 }
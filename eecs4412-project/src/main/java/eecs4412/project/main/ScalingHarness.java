@@ -0,0 +1,112 @@
+package eecs4412.project.main;
+
+import static eecs4412.project.util.Util.*;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+import eecs4412.project.util.CorpusGenerator;
+
+/**
+ * Runs the full Main train/test pipeline over generated corpora of growing size and
+ * reports wall time, peak heap and output size of each run, to see where the pipeline
+ * stops scaling linearly. Corpora are generated once under workDir/size and reused.
+ */
+public final class ScalingHarness {
+
+    public static final String DEFAULT_SIZES = "1000,10000,100000";
+
+    private ScalingHarness() {
+    }
+
+    /**
+     * ScalingHarness workDir [sizes [seed]] [-- Main options]
+     * @param args
+     * @throws IOException
+     */
+    public static void main(String[] args) throws IOException {
+        if(args.length < 1){
+            System.err.println("usage: ScalingHarness workDir [sizes [seed]] [-- Main options]");
+            System.exit(1);
+        }
+        List<String> harnessArgs = new ArrayList<>(Arrays.asList(args));
+        List<String> mainArgs = new ArrayList<>();
+        int separator = harnessArgs.indexOf("--");
+        if(separator >= 0){
+            mainArgs.addAll(harnessArgs.subList(separator + 1, harnessArgs.size()));
+            harnessArgs = harnessArgs.subList(0, separator);
+        }
+        Path workDir = Paths.get(harnessArgs.get(0));
+        String sizes = harnessArgs.size() > 1 ? harnessArgs.get(1) : DEFAULT_SIZES;
+        long seed = harnessArgs.size() > 2 ? Long.parseLong(harnessArgs.get(2)) : CorpusGenerator.DEFAULT_SEED;
+        CorpusGenerator generator = new CorpusGenerator(seed, CorpusGenerator.DEFAULT_VOCABULARY_SIZE);
+
+        List<String> report = new ArrayList<>();
+        report.add(String.format("%12s %12s %14s %14s %14s", "emails", "wall ms", "us/email", "peak heap MB", "output MB"));
+        for(String size : sizes.split(",")){
+            long emails = Long.parseLong(size.trim());
+            Path corpus = workDir.resolve(Long.toString(emails));
+            Path train = corpus.resolve("train");
+            Path test = corpus.resolve("test");
+            Path out = corpus.resolve("out");
+            // test emails follow the train emails, so the two sets never share an email
+            long testEmails = Math.max(1, emails / 4);
+            if(!Files.isDirectory(train)){
+                PRINTER.accept("Generating " + emails + " train emails in " + train);
+                generator.generate(train, 0, emails);
+            }
+            if(!Files.isDirectory(test)){
+                PRINTER.accept("Generating " + testEmails + " test emails in " + test);
+                generator.generate(test, emails, testEmails);
+            }
+            Files.createDirectories(out);
+
+            List<String> runArgs = new ArrayList<>(Arrays.asList("-t", train.toString(), "-T", test.toString(),
+                    "-to", out.toString(), "-To", out.toString()));
+            runArgs.addAll(mainArgs);
+            System.gc();
+            resetPeakHeap();
+            long start = System.nanoTime();
+            Main.main(runArgs.toArray(new String[0]));
+            long elapsed = System.nanoTime() - start;
+            report.add(String.format("%12d %12.0f %14.1f %14.1f %14.1f", emails, elapsed / 1e6, 
+                    elapsed / 1e3 / (emails + testEmails), peakHeap() / 1048576d, directorySize(out) / 1048576d));
+            PRINTER.accept(report.get(report.size() - 1));
+        }
+        report.forEach(PRINTER);
+    }
+
+    // *** helper methods
+    private static void resetPeakHeap() {
+        for(MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()){
+            if(pool.getType() == MemoryType.HEAP){
+                pool.resetPeakUsage();
+            }
+        }
+    }
+
+    private static long peakHeap() {
+        long peak = 0;
+        for(MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()){
+            if(pool.getType() == MemoryType.HEAP){
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peak;
+    }
+
+    private static long directorySize(Path directory) throws IOException {
+        try(Stream<Path> files = Files.list(directory)){
+            return files.filter(Files::isRegularFile).mapToLong(file -> file.toFile().length()).sum();
+        }
+    }
+}
@@ -0,0 +1,256 @@
+package eecs4412.project.main;
+
+import static eecs4412.project.util.Util.*;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import eecs4412.project.model.ArffWriter;
+import eecs4412.project.model.CellEncoder;
+import eecs4412.project.model.NaiveBayesClassifier;
+import eecs4412.project.util.EmailClassifier;
+import eecs4412.project.util.Vectorizer;
+
+/**
+ * Watches a spool directory and turns every email file landing in it into an ARFF row,
+ * and a prediction when a classifier is given, with the model and tokenizer kept warm
+ * between emails. Rows are appended and flushed to stream-NNNNN.arff (and .csv) in the
+ * output directory, rolled over every rowsPerFile emails; a restarted daemon numbers its
+ * files after those already there.
+ * Each email is moved to the processed subdirectory of the spool once its row is written,
+ * so a restart only picks up the emails still waiting; an email that cannot be read is
+ * reported and left in the spool.
+ * Writers should create emails under a name starting with '.' or ending with ".tmp" and
+ * rename them once complete; such names are ignored.
+ */
+public class SpoolDaemon implements Closeable {
+
+    public static final int DEFAULT_ROWS_PER_FILE = 10000;
+    public static final String PROCESSED_DIRECTORY = "processed";
+    private static final long POLL_MILLIS = 500;
+    private static final int INITIAL_EMAIL_CAPACITY = 1 << 16;
+    private static final Pattern OUTPUT_FILE = Pattern.compile("stream-(\\d+)\\.(arff|csv)");
+
+    private final Path spoolPath;
+    private final Path outputPath;
+    private final Vectorizer vectorizer;
+    private final EmailClassifier emailClassifier;
+    private final boolean sparse;
+    private final CellEncoder encoder;
+    private final int rowsPerFile;
+    private final Path processedPath;
+    private ArffWriter arffWriter;
+    private BufferedWriter predictionWriter;
+    private ByteBuffer email = ByteBuffer.allocate(INITIAL_EMAIL_CAPACITY);
+    private int rows;
+    // -1 until the output directory has been looked at for the files of a previous run
+    private int rollCount = -1;
+    private long emails;
+    private long elapsedNanos;
+    private volatile boolean running = true;
+
+    /**
+     *
+     * @param spoolPath directory to watch
+     * @param outputPath directory of the rolling output files
+     * @param vectorizer
+     * @param emailClassifier null to only write ARFF rows
+     * @param sparse
+     * @param encoder text of the numeric cells
+     * @param rowsPerFile
+     */
+    public SpoolDaemon(Path spoolPath, Path outputPath, Vectorizer vectorizer, EmailClassifier emailClassifier,
+            boolean sparse, CellEncoder encoder, int rowsPerFile) {
+        super();
+        this.spoolPath = spoolPath;
+        this.outputPath = outputPath;
+        this.vectorizer = vectorizer;
+        this.emailClassifier = emailClassifier;
+        this.sparse = sparse;
+        this.encoder = encoder;
+        this.rowsPerFile = rowsPerFile;
+        this.processedPath = spoolPath.resolve(PROCESSED_DIRECTORY);
+    }
+
+    /**
+     * process the emails already in the spool directory, then every new one until close
+     * @throws IOException
+     */
+    public void run() throws IOException {
+        try(WatchService watcher = spoolPath.getFileSystem().newWatchService()){
+            // registered first, so no email landing during the initial scan is missed
+            spoolPath.register(watcher, ENTRY_CREATE);
+            try(DirectoryStream<Path> files = Files.newDirectoryStream(spoolPath, FILES_ONLY)){
+                for(Path file : files){
+                    process(file);
+                }
+            }
+            while(running){
+                WatchKey key = watcher.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if(key == null){
+                    continue;
+                }
+                for(WatchEvent<?> event : key.pollEvents()){
+                    if(event.kind() == OVERFLOW){
+                        PRINTER.accept("Spool events were lost, emails may have been skipped");
+                        continue;
+                    }
+                    process(spoolPath.resolve((Path) event.context()));
+                }
+                if(!key.reset()){
+                    PRINTER.accept("Spool directory is no longer accessible");
+                    break;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            close();
+        }
+    }
+
+    /**
+     * vectorize, and classify, one email read once, then move it to the processed 
+     * directory; an email that cannot be read or moved is reported and skipped
+     * @param file
+     * @throws IOException if the output files cannot be written
+     */
+    public synchronized void process(Path file) throws IOException {
+        String name = file.getFileName().toString();
+        if(!running || name.startsWith(".") || name.endsWith(".tmp") || !FILES_ONLY.accept(file)){
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            read(file);
+        } catch (IOException e) {
+            PRINTER.accept("Skipped " + name + ": " + e);
+            return;
+        }
+        if(arffWriter == null || rows == rowsPerFile){
+            roll();
+        }
+        String label = NaiveBayesClassifier.LABELS[NaiveBayesClassifier.classOf(name)];
+        arffWriter.writeRow(vectorizer.vectorize(email.duplicate()), label);
+        arffWriter.flush();
+        if(predictionWriter != null){
+            predictionWriter.write(name);
+            predictionWriter.write(',');
+            predictionWriter.write(NaiveBayesClassifier.LABELS[emailClassifier.classify(email)]);
+            predictionWriter.newLine();
+            predictionWriter.flush();
+        }
+        rows++;
+        emails++;
+        try {
+            Files.createDirectories(processedPath);
+            Files.move(file, processedPath.resolve(name), REPLACE_EXISTING);
+        } catch (IOException e) {
+            PRINTER.accept("Processed " + name + " could not be moved, a restart will process it again: " + e);
+        }
+        elapsedNanos += System.nanoTime() - start;
+    }
+
+    public long getEmails() {
+        return emails;
+    }
+
+    /**
+     *
+     * @return average milliseconds per email
+     */
+    public double getMillisPerEmail() {
+        return emails == 0 ? 0d : elapsedNanos / 1e6 / emails;
+    }
+
+    /**
+     * stop watching and close the current output files
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        running = false;
+        closeWriters();
+    }
+
+    // *** helper methods
+    private void roll() throws IOException {
+        closeWriters();
+        if(rollCount < 0){
+            rollCount = nextRollCount();
+        }
+        String base = String.format("stream-%05d", rollCount++);
+        arffWriter = new ArffWriter(outputPath.resolve(base + ".arff"), sparse, encoder);
+        arffWriter.writeHeader("email-filter-stream", vectorizer.getModel().getTerms());
+        if(emailClassifier != null){
+            predictionWriter = Files.newBufferedWriter(outputPath.resolve(base + ".csv"));
+        }
+        rows = 0;
+    }
+
+    /**
+     *
+     * @return the number after the highest stream-NNNNN file in the output directory, 0 if none
+     * @throws IOException
+     */
+    private int nextRollCount() throws IOException {
+        int next = 0;
+        try(DirectoryStream<Path> files = Files.newDirectoryStream(outputPath, "stream-*")){
+            for(Path file : files){
+                Matcher matcher = OUTPUT_FILE.matcher(file.getFileName().toString());
+                if(matcher.matches()){
+                    next = Math.max(next, Integer.parseInt(matcher.group(1)) + 1);
+                }
+            }
+        }
+        return next;
+    }
+
+    /**
+     * reads the whole of file into email, grown when too small
+     * @param file
+     * @throws IOException
+     */
+    private void read(Path file) throws IOException {
+        try(FileChannel channel = FileChannel.open(file)){
+            long size = channel.size();
+            if(size > Integer.MAX_VALUE){
+                throw new IOException("email of " + size + " bytes");
+            }
+            if(size > email.capacity()){
+                email = ByteBuffer.allocate(Math.max((int) size, email.capacity() * 2));
+            }
+            email.clear();
+            int read = 0;
+            while(read >= 0 && email.hasRemaining()){
+                read = channel.read(email);
+            }
+            email.flip();
+        }
+    }
+
+    private void closeWriters() throws IOException {
+        if(arffWriter != null){
+            arffWriter.close();
+            arffWriter = null;
+        }
+        if(predictionWriter != null){
+            predictionWriter.close();
+            predictionWriter = null;
+        }
+    }
+}
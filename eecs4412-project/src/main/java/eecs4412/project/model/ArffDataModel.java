@@ -1,33 +1,107 @@
 package eecs4412.project.model;
 
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
-import java.util.StringJoiner;
-import java.util.TreeMap;
-import java.util.stream.Collectors;
 
+/**
+ * In-memory ARFF dataset in compressed sparse row form: one attribute schema shared by
+ * every row, the non-zero values of all rows in one primitive array with their column
+ * in another, the start of each row in a third, and the class of each row as a byte
+ * index into LABELS.
+ */
 public class ArffDataModel {
-    
-    private List<TreeMap<String, Object>> rows;
+
+    private static final String[] LABELS = NaiveBayesClassifier.LABELS;
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private List<String> attributes = Collections.emptyList();
     private String relationName;
-    
+    private boolean sparse;
+    private int rowCount;
+    private int[] rowStarts = new int[INITIAL_CAPACITY + 1];
+    private byte[] classes = new byte[INITIAL_CAPACITY];
+    private int[] columns = new int[INITIAL_CAPACITY];
+    private double[] values = new double[INITIAL_CAPACITY];
+
     public ArffDataModel(String relationName) {
         super();
-        rows = new ArrayList<>();
         this.relationName = relationName;
     }
-    
-    public void addRow(TreeMap<String, Object> row){
-        rows.add(row);
+
+    /**
+     * sets the numeric attributes, in column order, of the rows to come
+     * @param attributes names without quotes
+     */
+    public void setAttributes(List<String> attributes) {
+        if(rowCount > 0 && !attributes.equals(this.attributes)){
+            throw new IllegalStateException("the attributes of a data model with rows cannot change");
+        }
+        this.attributes = Collections.unmodifiableList(new ArrayList<>(attributes));
+    }
+
+    public List<String> getAttributes() {
+        return attributes;
     }
-    
-    public List<TreeMap<String, Object>> getRows() {
-        return rows;
+
+    /**
+     * appends a row, keeping only its non-zero values
+     * @param row attribute values, in column order
+     * @param label class label, one of LABELS
+     */
+    public void addRow(double[] row, String label) {
+        if(row.length != attributes.size()){
+            throw new IllegalArgumentException(String.format("row of %d values for %d attributes",
+                    row.length, attributes.size()));
+        }
+        if(rowCount == classes.length){
+            classes = Arrays.copyOf(classes, rowCount * 2);
+            rowStarts = Arrays.copyOf(rowStarts, rowCount * 2 + 1);
+        }
+        int size = rowStarts[rowCount];
+        for(int column = 0; column < row.length; column++){
+            if(row[column] == 0d){
+                continue;
+            }
+            if(size == values.length){
+                columns = Arrays.copyOf(columns, size * 2);
+                values = Arrays.copyOf(values, size * 2);
+            }
+            columns[size] = column;
+            values[size] = row[column];
+            size++;
+        }
+        classes[rowCount] = (byte) labelIndex(label);
+        rowStarts[++rowCount] = size;
+    }
+
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     *
+     * @param row
+     * @param column
+     * @return the value of the attribute in column for row, 0 when not stored
+     */
+    public double getValue(int row, int column) {
+        int index = Arrays.binarySearch(columns, rowStarts[row], rowStarts[row + 1], column);
+        return index >= 0 ? values[index] : 0d;
     }
 
-    public void setRows(List<TreeMap<String, Object>> rows) {
-        this.rows = rows;
+    /**
+     *
+     * @param row
+     * @return class label of row
+     */
+    public String getLabel(int row) {
+        return LABELS[classes[row]];
     }
 
     public String getRelationName() {
@@ -37,43 +111,83 @@ public class ArffDataModel {
     public void setRelationName(String relationName) {
         this.relationName = relationName;
     }
-    
+
+    public boolean isSparse() {
+        return sparse;
+    }
+
+    /**
+     *
+     * @param sparse write data rows as {index value, ...} listing only non-zero values
+     */
+    public void setSparse(boolean sparse) {
+        this.sparse = sparse;
+    }
+
     public String getHeader(){
-        Collection<String> header = rows.stream().findAny().get().keySet();
-        return header.stream()
-                     .map(entry -> {
-                              String col = "";
-                              if("class".equals(entry)){
-                                  col = String.format("@Attribute %s {H,S}", entry);
-                              } else if ("'class'".equals(entry)) {
-                                  col = String.format("@Attribute %s numeric", "'_class'"); // for WEKA
-                              } else {
-                                  col = String.format("@Attribute %s numeric", entry); 
-                              }
-                              return col ;
-                     })
-                     .collect(Collectors.joining(System.lineSeparator()));
+        StringWriter header = new StringWriter();
+        String lineSeparator = System.lineSeparator();
+        for(String attribute : attributes){
+            // 'class' would clash with the class attribute in WEKA
+            header.append("@Attribute '").append("class".equals(attribute) ? "_class" : attribute)
+                .append("' numeric").append(lineSeparator);
+        }
+        return header.append("@Attribute class {H,S}").toString();
     }
 
     public String getData() {
-        return rows.stream()
-                   .map(row -> csv(row.values()))
-                   .collect(Collectors.joining(System.lineSeparator()));
+        StringWriter data = new StringWriter();
+        try {
+            writeRows(new ArffWriter(data, sparse));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return data.toString();
+    }
+
+    /**
+     * writes the dataset in ARFF, the same text as toString()
+     * @param out
+     * @throws IOException
+     */
+    public void writeTo(Writer out) throws IOException {
+        ArffWriter writer = new ArffWriter(out, sparse);
+        writer.writeHeader(relationName, attributes);
+        writeRows(writer);
+        writer.flush();
     }
 
     @Override
     public String toString() {
-        StringJoiner file = new StringJoiner(System.lineSeparator());
-        file.add(String.format("@Relation %s", relationName))
-            .add(getHeader())
-            .add("@Data")
-            .add(getData());
-        return file.toString();
-    }
-    
-    private String csv (Collection<Object> col) {
-        return col.stream()
-                  .map(obj -> obj.toString())
-                  .collect(Collectors.joining(","));
+        StringWriter out = new StringWriter();
+        try {
+            writeTo(out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toString();
+    }
+
+    // *** helper methods
+    private void writeRows(ArffWriter writer) throws IOException {
+        double[] row = new double[attributes.size()];
+        for(int r = 0; r < rowCount; r++){
+            for(int index = rowStarts[r]; index < rowStarts[r + 1]; index++){
+                row[columns[index]] = values[index];
+            }
+            writer.writeRow(row, LABELS[classes[r]]);
+            for(int index = rowStarts[r]; index < rowStarts[r + 1]; index++){
+                row[columns[index]] = 0d;
+            }
+        }
+    }
+
+    private static int labelIndex(String label) {
+        for(int i = 0; i < LABELS.length; i++){
+            if(LABELS[i].equals(label)){
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("unknown class label " + label);
     }
 }
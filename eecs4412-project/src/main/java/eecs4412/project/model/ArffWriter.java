@@ -0,0 +1,182 @@
+package eecs4412.project.model;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Writes an ARFF file row by row, in the same layout as ArffDataModel.toString(),
+ * without holding the dataset in memory.
+ */
+public class ArffWriter implements Closeable, Flushable {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final Writer out;
+    private final boolean sparse;
+    private final CellEncoder encoder;
+    private final StringBuilder rowBuffer = new StringBuilder();
+    private boolean firstLine = true;
+
+    public ArffWriter(Path file) throws IOException {
+        this(file, false);
+    }
+
+    /**
+     *
+     * @param file
+     * @param sparse write data rows as {index value, ...} listing only non-zero values
+     * @throws IOException
+     */
+    public ArffWriter(Path file, boolean sparse) throws IOException {
+        this(file, sparse, CellEncoder.FULL);
+    }
+
+    /**
+     *
+     * @param file
+     * @param sparse write data rows as {index value, ...} listing only non-zero values
+     * @param encoder text of the numeric cells
+     * @throws IOException
+     */
+    public ArffWriter(Path file, boolean sparse, CellEncoder encoder) throws IOException {
+        this(new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(file), StandardCharsets.UTF_8), BUFFER_SIZE),
+                sparse, encoder);
+    }
+
+    /**
+     *
+     * @param out a buffered writer, rows are written to it cell by cell
+     * @param sparse write data rows as {index value, ...} listing only non-zero values
+     */
+    public ArffWriter(Writer out, boolean sparse) {
+        this(out, sparse, CellEncoder.FULL);
+    }
+
+    /**
+     *
+     * @param out a buffered writer, rows are written to it cell by cell
+     * @param sparse write data rows as {index value, ...} listing only non-zero values
+     * @param encoder text of the numeric cells
+     */
+    public ArffWriter(Writer out, boolean sparse, CellEncoder encoder) {
+        super();
+        this.out = out;
+        this.sparse = sparse;
+        this.encoder = encoder;
+    }
+
+    /**
+     * writes the @Relation, @Attribute and @Data lines, with a comment recording the scale
+     * of quantized cells
+     * @param relationName
+     * @param attributes numeric attribute names, in column order, without quotes
+     * @throws IOException
+     */
+    public void writeHeader(String relationName, Iterable<String> attributes) throws IOException {
+        line().write("@Relation " + relationName);
+        if(encoder.getBits() != 0){
+            line().write("% weights quantized to " + encoder.getBits() + " bits: weight = cell * " + encoder.getScale());
+        }
+        for(String attribute : attributes){
+            // 'class' would clash with the class attribute in WEKA
+            line().write("@Attribute '" + ("class".equals(attribute) ? "_class" : attribute) + "' numeric");
+        }
+        line().write("@Attribute class {H,S}");
+        line().write("@Data");
+    }
+
+    /**
+     * writes one data row
+     * @param values attribute values, in header order
+     * @param label class label, H or S
+     * @throws IOException
+     */
+    public void writeRow(double[] values, String label) throws IOException {
+        Writer w = line();
+        rowBuffer.setLength(0);
+        formatRow(rowBuffer, values, label, sparse, encoder);
+        w.append(rowBuffer);
+    }
+
+    /**
+     * writes data rows formatted elsewhere, each preceded by the line separator, after
+     * the header
+     * @param rows
+     * @throws IOException
+     */
+    public void writeRows(CharSequence rows) throws IOException {
+        if(firstLine){
+            throw new IllegalStateException("rows written before the header");
+        }
+        out.append(rows);
+    }
+
+    /**
+     * appends the text of one data row, without line separator
+     * @param sb
+     * @param values attribute values, in header order
+     * @param label class label, H or S
+     * @param sparse {index value, ...} listing only non-zero values
+     * @return sb
+     */
+    public static StringBuilder formatRow(StringBuilder sb, double[] values, String label, boolean sparse) {
+        return formatRow(sb, values, label, sparse, CellEncoder.FULL);
+    }
+
+    /**
+     * appends the text of one data row, without line separator
+     * @param sb
+     * @param values attribute values, in header order
+     * @param label class label, H or S
+     * @param sparse {index value, ...} listing only the cells that are not 0
+     * @param encoder text of the numeric cells, not shared between threads
+     * @return sb
+     */
+    public static StringBuilder formatRow(StringBuilder sb, double[] values, String label, boolean sparse,
+            CellEncoder encoder) {
+        if(sparse){
+            sb.append('{');
+            for(int i = 0; i < values.length; i++){
+                if(!encoder.isZero(values[i])){
+                    encoder.append(sb.append(i).append(' '), values[i]).append(',');
+                }
+            }
+            // always written: an omitted nominal value would read back as H
+            return sb.append(values.length).append(' ').append(label).append('}');
+        }
+        for(int i = 0; i < values.length; i++){
+            encoder.append(sb, values[i]).append(',');
+        }
+        return sb.append(label);
+    }
+
+    /**
+     * pushes the rows written so far to the file, for readers following it as it grows
+     * @throws IOException
+     */
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+
+    // *** helper method
+    private Writer line() throws IOException {
+        if(!firstLine){
+            out.write(System.lineSeparator());
+        }
+        firstLine = false;
+        return out;
+    }
+}
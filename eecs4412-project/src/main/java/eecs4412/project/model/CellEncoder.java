@@ -0,0 +1,196 @@
+package eecs4412.project.model;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+
+/**
+ * Text of the numeric ARFF cells, appended straight to the row buffer: the shortest exact
+ * decimal of Double.toString (FULL), a fixed number of significant digits, or an integer
+ * level of a quantized weight, cell = round(weight / scale) with scale the max training
+ * weight over the 2^bits - 1 levels.
+ * Digits are rounded half up on the exact value of the double, like BigDecimal.round; the
+ * few values whose scaled double is too close to a tie to tell go through BigDecimal.
+ */
+public final class CellEncoder {
+
+    public static final CellEncoder FULL = new CellEncoder(0, 0, 0d);
+    public static final int MAX_DIGITS = 13;
+    // the scaled double is within an ulp or so of the exact product
+    private static final double TIE_ULPS = 4d;
+
+    private static final double[] POWERS_OF_TEN = new double[23];
+    private static final long[] LONG_POWERS_OF_TEN = new long[MAX_DIGITS + 2];
+    static {
+        for(int i = 0; i < POWERS_OF_TEN.length; i++){
+            POWERS_OF_TEN[i] = i == 0 ? 1d : POWERS_OF_TEN[i - 1] * 10d;
+        }
+        for(int i = 0; i < LONG_POWERS_OF_TEN.length; i++){
+            LONG_POWERS_OF_TEN[i] = i == 0 ? 1L : LONG_POWERS_OF_TEN[i - 1] * 10L;
+        }
+    }
+
+    private final int digits;
+    private final int bits;
+    private final double scale;
+    private final long maxLevel;
+    private final char[] buffer = new char[MAX_DIGITS + 1];
+
+    private CellEncoder(int digits, int bits, double scale) {
+        super();
+        this.digits = digits;
+        this.bits = bits;
+        this.scale = scale;
+        this.maxLevel = bits == 0 ? 0 : (1L << bits) - 1;
+    }
+
+    /**
+     *
+     * @param digits significant digits, 1 to MAX_DIGITS
+     * @return
+     */
+    public static CellEncoder digits(int digits) {
+        if(digits < 1 || digits > MAX_DIGITS){
+            throw new IllegalArgumentException("significant digits must be in [1, " + MAX_DIGITS + "]");
+        }
+        return new CellEncoder(digits, 0, 0d);
+    }
+
+    /**
+     *
+     * @param bits 8 or 16
+     * @param maxWeight largest weight, written as the top level; larger ones are clamped to it
+     * @return
+     */
+    public static CellEncoder quantized(int bits, double maxWeight) {
+        if(bits != 8 && bits != 16){
+            throw new IllegalArgumentException("quantization is 8 or 16 bits");
+        }
+        if(!(maxWeight > 0d) || Double.isInfinite(maxWeight)){
+            throw new IllegalArgumentException("no max weight to quantize against");
+        }
+        return new CellEncoder(0, bits, maxWeight / ((1L << bits) - 1));
+    }
+
+    /**
+     * an encoder of the same settings for another thread, the digit buffer is not shared
+     * @return
+     */
+    public CellEncoder copy() {
+        return this == FULL ? FULL : new CellEncoder(digits, bits, scale);
+    }
+
+    /**
+     *
+     * @param value
+     * @return true if the cell of value would read back as 0, left out of sparse rows
+     */
+    public boolean isZero(double value) {
+        return bits == 0 ? value == 0d : level(value) == 0;
+    }
+
+    /**
+     * appends the cell of value
+     * @param sb
+     * @param value
+     * @return sb
+     */
+    public StringBuilder append(StringBuilder sb, double value) {
+        if(bits != 0){
+            return sb.append(level(value));
+        }
+        if(digits == 0 || Double.isNaN(value) || Double.isInfinite(value)){
+            return sb.append(value);
+        }
+        if(value == 0d){
+            return sb.append('0');
+        }
+        if(value < 0d){
+            sb.append('-');
+            value = -value;
+        }
+        int exponent = (int) Math.floor(Math.log10(value));
+        double scaled = scale(value, digits - 1 - exponent);
+        // log10 may be off by one near powers of ten
+        if(Math.round(scaled) < LONG_POWERS_OF_TEN[digits - 1]){
+            exponent--;
+            scaled = scale(value, digits - 1 - exponent);
+        }
+        long mantissa;
+        if(Math.abs(scaled - Math.floor(scaled) - 0.5d) <= TIE_ULPS * Math.ulp(scaled)){
+            BigDecimal rounded = new BigDecimal(value).round(new MathContext(digits, RoundingMode.HALF_UP));
+            exponent = rounded.precision() - rounded.scale() - 1;
+            mantissa = rounded.unscaledValue().longValue() * LONG_POWERS_OF_TEN[digits - rounded.precision()];
+        } else {
+            mantissa = Math.round(scaled);
+            if(mantissa >= LONG_POWERS_OF_TEN[digits]){
+                // rounding carried a digit, 9.99.. to 10
+                exponent++;
+                mantissa = LONG_POWERS_OF_TEN[digits - 1];
+            }
+        }
+        int length = digits;
+        while(length > 1 && mantissa % 10 == 0){
+            mantissa /= 10;
+            length--;
+        }
+        for(int i = length - 1; i >= 0; i--){
+            buffer[i] = (char) ('0' + mantissa % 10);
+            mantissa /= 10;
+        }
+        if(exponent < -3 || exponent >= digits){
+            sb.append(buffer[0]);
+            if(length > 1){
+                sb.append('.').append(buffer, 1, length - 1);
+            }
+            return sb.append('E').append(exponent);
+        }
+        if(exponent < 0){
+            sb.append('0').append('.');
+            for(int i = -1; i > exponent; i--){
+                sb.append('0');
+            }
+            return sb.append(buffer, 0, length);
+        }
+        for(int i = 0; i <= exponent; i++){
+            sb.append(i < length ? buffer[i] : '0');
+        }
+        if(length > exponent + 1){
+            sb.append('.').append(buffer, exponent + 1, length - exponent - 1);
+        }
+        return sb;
+    }
+
+    /**
+     *
+     * @return 8 or 16, 0 when the weights are not quantized
+     */
+    public int getBits() {
+        return bits;
+    }
+
+    /**
+     *
+     * @return weight of one level of a quantized cell
+     */
+    public double getScale() {
+        return scale;
+    }
+
+    public int getDigits() {
+        return digits;
+    }
+
+    // *** helper methods
+    private long level(double value) {
+        long level = Math.round(value / scale);
+        return level < 0 ? 0 : Math.min(level, maxLevel);
+    }
+
+    private static double scale(double value, int power) {
+        if(power >= 0){
+            return value * (power < POWERS_OF_TEN.length ? POWERS_OF_TEN[power] : Math.pow(10d, power));
+        }
+        return value / (-power < POWERS_OF_TEN.length ? POWERS_OF_TEN[-power] : Math.pow(10d, -power));
+    }
+}
@@ -0,0 +1,88 @@
+package eecs4412.project.model;
+
+/**
+ * Confusion counts and timing of a batch of classified emails, spam being the
+ * positive class.
+ */
+public class ClassificationReport {
+
+    private long truePositives;
+    private long falsePositives;
+    private long trueNegatives;
+    private long falseNegatives;
+    private long elapsedNanos;
+
+    /**
+     * counts one classified email
+     * @param actual HAM or SPAM
+     * @param predicted HAM or SPAM
+     */
+    public void add(int actual, int predicted) {
+        if(predicted == NaiveBayesClassifier.SPAM){
+            if(actual == predicted){ truePositives++; } else { falsePositives++; }
+        } else {
+            if(actual == predicted){ trueNegatives++; } else { falseNegatives++; }
+        }
+    }
+
+    public void addElapsedNanos(long nanos) {
+        elapsedNanos += nanos;
+    }
+
+    public long getCount() {
+        return truePositives + falsePositives + trueNegatives + falseNegatives;
+    }
+
+    public double getAccuracy() {
+        return getCount() == 0 ? 0d : (double)(truePositives + trueNegatives) / getCount();
+    }
+
+    public double getPrecision() {
+        return truePositives + falsePositives == 0 ? 0d : (double) truePositives / (truePositives + falsePositives);
+    }
+
+    public double getRecall() {
+        return truePositives + falseNegatives == 0 ? 0d : (double) truePositives / (truePositives + falseNegatives);
+    }
+
+    /**
+     *
+     * @return emails classified per second
+     */
+    public double getThroughput() {
+        return elapsedNanos == 0 ? 0d : getCount() * 1e9 / elapsedNanos;
+    }
+
+    /**
+     *
+     * @return average microseconds per email
+     */
+    public double getMicrosPerEmail() {
+        return getCount() == 0 ? 0d : elapsedNanos / 1e3 / getCount();
+    }
+
+    public long getTruePositives() {
+        return truePositives;
+    }
+
+    public long getFalsePositives() {
+        return falsePositives;
+    }
+
+    public long getTrueNegatives() {
+        return trueNegatives;
+    }
+
+    public long getFalseNegatives() {
+        return falseNegatives;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Emails: %d, accuracy: %.2f%%, spam precision: %.2f%%, spam recall: %.2f%%"
+                + " (TP %d, FP %d, TN %d, FN %d)%nThroughput: %.0f emails/s, %.1f us/email",
+                getCount(), getAccuracy() * 100, getPrecision() * 100, getRecall() * 100,
+                truePositives, falsePositives, trueNegatives, falseNegatives,
+                getThroughput(), getMicrosPerEmail());
+    }
+}
@@ -0,0 +1,209 @@
+package eecs4412.project.model;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Interns strings (terms or document names) into dense int ids [0, size).
+ * Backed by an open addressing table of ids, so no entry object is kept per string.
+ */
+public class Dictionary {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private String[] names;
+    private int[] hashes;
+    private int[] table;
+    private int size;
+
+    public Dictionary() {
+        this(INITIAL_CAPACITY);
+    }
+
+    public Dictionary(int expectedSize) {
+        super();
+        int capacity = Integer.highestOneBit(Math.max(INITIAL_CAPACITY, expectedSize) * 2 - 1) << 1;
+        this.names = new String[capacity >> 1];
+        this.hashes = new int[capacity >> 1];
+        this.table = new int[capacity];
+    }
+
+    /**
+     * returns the id of name, assigning the next free id if it is new
+     * @param name
+     * @return
+     */
+    public int intern(String name) {
+        int hash = name.hashCode();
+        int slot = slotOf(name, hash);
+        return table[slot] != 0 ? table[slot] - 1 : insert(name, hash, slot);
+    }
+
+    /**
+     * returns the id of the word in buffer[offset, offset + length), assigning the next 
+     * free id if it is new. A String is only created for words not seen before.
+     * @param buffer
+     * @param offset
+     * @param length
+     * @return
+     */
+    public int intern(char[] buffer, int offset, int length) {
+        int hash = hash(buffer, offset, length);
+        int slot = slotOf(buffer, offset, length, hash);
+        return table[slot] != 0 ? table[slot] - 1 : insert(new String(buffer, offset, length), hash, slot);
+    }
+
+    /**
+     *
+     * @param name
+     * @return the id of name or -1 if it has never been interned
+     */
+    public int lookup(String name) {
+        return table[slotOf(name, name.hashCode())] - 1;
+    }
+
+    /**
+     *
+     * @param buffer
+     * @param offset
+     * @param length
+     * @return the id of the word in buffer[offset, offset + length) or -1 if it has never been interned
+     */
+    public int lookup(char[] buffer, int offset, int length) {
+        return table[slotOf(buffer, offset, length, hash(buffer, offset, length))] - 1;
+    }
+
+    /**
+     *
+     * @param id
+     * @return
+     */
+    public String get(int id) {
+        return names[id];
+    }
+
+    /**
+     *
+     * @return
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * drops the strings of ids; the others keep their order and are renumbered down to
+     * fill the gaps
+     * @param ids
+     * @return the new id of every old id, -1 for the dropped ones
+     */
+    public int[] remove(BitSet ids) {
+        int[] idMap = new int[size];
+        int next = 0;
+        for(int id = 0; id < size; id++){
+            if(ids.get(id)){
+                idMap[id] = -1;
+                continue;
+            }
+            idMap[id] = next;
+            names[next] = names[id];
+            hashes[next] = hashes[id];
+            next++;
+        }
+        Arrays.fill(names, next, size, null);
+        size = next;
+        rehash(table.length);
+        return idMap;
+    }
+
+    /**
+     *
+     * @return the interned strings in id order
+     */
+    public List<String> names() {
+        return Collections.unmodifiableList(Arrays.asList(names).subList(0, size));
+    }
+
+    // *** helper methods
+    private int slotOf(String name, int hash) {
+        int mask = table.length - 1;
+        int slot = mix(hash) & mask;
+        int id;
+        while((id = table[slot] - 1) >= 0){
+            if(hashes[id] == hash && names[id].equals(name)){
+                break;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private int slotOf(char[] buffer, int offset, int length, int hash) {
+        int mask = table.length - 1;
+        int slot = mix(hash) & mask;
+        int id;
+        while((id = table[slot] - 1) >= 0){
+            if(hashes[id] == hash && matches(names[id], buffer, offset, length)){
+                break;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private int insert(String name, int hash, int slot) {
+        if(size == names.length){
+            grow();
+            slot = slotOf(name, hash);
+        }
+        int id = size++;
+        names[id] = name;
+        hashes[id] = hash;
+        table[slot] = id + 1;
+        return id;
+    }
+
+    private void grow() {
+        names = Arrays.copyOf(names, names.length << 1);
+        hashes = Arrays.copyOf(hashes, hashes.length << 1);
+        rehash(table.length << 1);
+    }
+
+    private void rehash(int capacity) {
+        table = new int[capacity];
+        int mask = table.length - 1;
+        for(int id = 0; id < size; id++){
+            int slot = mix(hashes[id]) & mask;
+            while(table[slot] != 0){
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = id + 1;
+        }
+    }
+
+    private static boolean matches(String name, char[] buffer, int offset, int length) {
+        if(name.length() != length){
+            return false;
+        }
+        for(int i = 0; i < length; i++){
+            if(name.charAt(i) != buffer[offset + i]){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // same as String.hashCode, so both lookups land in the same slot
+    private static int hash(char[] buffer, int offset, int length) {
+        int hash = 0;
+        for(int i = offset; i < offset + length; i++){
+            hash = 31 * hash + buffer[i];
+        }
+        return hash;
+    }
+
+    private static int mix(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+}
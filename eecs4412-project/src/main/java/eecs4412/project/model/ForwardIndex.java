@@ -0,0 +1,146 @@
+package eecs4412.project.model;
+
+import java.util.Arrays;
+
+/**
+ * Document to (termId, frequency) vectors, the transpose of the postings, so a document's
+ * row can be built from its own terms only. Built from the postings of given terms, or
+ * kept up to date by the TermData of an index that opted in with keepForwardIndex; terms
+ * trimmed from such an index stay in the vectors and are for the reader to skip.
+ * The vectors of a range of documents only, read from a MappedInvertedIndex, start at the
+ * first docId of the range.
+ */
+public class ForwardIndex {
+
+    private static final int[] EMPTY = new int[0];
+    private static final int INITIAL_CAPACITY = 8;
+
+    private final int firstDocId;
+    private int[][] vectors = new int[0][];
+    private int[] sizes = new int[0];
+    // where the pair of a term sits in the vector of the document it was last counted in
+    private int[] slots = new int[0];
+    private int[] slotDocIds = new int[0];
+
+    public ForwardIndex() {
+        this(0);
+    }
+
+    /**
+     *
+     * @param firstDocId docId of the first vector
+     */
+    ForwardIndex(int firstDocId) {
+        super();
+        this.firstDocId = firstDocId;
+    }
+
+    /**
+     * forward index of the postings of terms as they are now, each term known by its
+     * position in terms, so the pairs of a document are in that order
+     * @param terms null for terms without postings
+     * @return
+     */
+    public static ForwardIndex of(TermData[] terms) {
+        ForwardIndex forwardIndex = new ForwardIndex();
+        for(int id = 0; id < terms.length; id++){
+            if(terms[id] != null){
+                forwardIndex.addPostings(terms[id], id);
+            }
+        }
+        return forwardIndex;
+    }
+
+    /**
+     * counts every posting of termData under termId
+     * @param termData
+     * @param termId
+     */
+    void addPostings(TermData termData, int termId) {
+        Postings.Cursor cursor = termData.getPostings().cursor();
+        while(cursor.next()){
+            count(cursor.docId(), termId, cursor.frequency(), cursor.frequency());
+        }
+    }
+
+    /**
+     * a term now occurs frequency times in docId
+     * @param docId
+     * @param termId
+     * @param added occurrences just counted
+     * @param frequency the new frequency of the term in docId
+     */
+    void count(int docId, int termId, int added, int frequency) {
+        int index = docId - firstDocId;
+        if(index >= vectors.length){
+            int length = Math.max(vectors.length * 2, index + 1);
+            vectors = Arrays.copyOf(vectors, length);
+            sizes = Arrays.copyOf(sizes, length);
+        }
+        if(termId >= slots.length){
+            int length = Math.max(slots.length * 2, termId + 1);
+            slots = Arrays.copyOf(slots, length);
+            slotDocIds = grow(slotDocIds, length);
+        }
+        int[] vector = vectors[index] == null ? EMPTY : vectors[index];
+        int size = sizes[index];
+        if(frequency == added){
+            if(size * 2 == vector.length){
+                vector = Arrays.copyOf(vector, Math.max(INITIAL_CAPACITY, vector.length * 2));
+                vectors[index] = vector;
+            }
+            vector[size * 2] = termId;
+            vector[size * 2 + 1] = frequency;
+            slots[termId] = size;
+            slotDocIds[termId] = docId;
+            sizes[index]++;
+            return;
+        }
+        int slot = slots[termId];
+        if(slotDocIds[termId] != docId || slot >= size || vector[slot * 2] != termId){
+            // the document was not the last one the term was counted in
+            slot = 0;
+            while(vector[slot * 2] != termId){
+                slot++;
+            }
+        }
+        vector[slot * 2 + 1] = frequency;
+    }
+
+    /**
+     *
+     * @param docId
+     * @return number of distinct terms counted in docId
+     */
+    public int size(int docId) {
+        int index = docId - firstDocId;
+        return index >= 0 && index < sizes.length ? sizes[index] : 0;
+    }
+
+    /**
+     *
+     * @param docId
+     * @param index in [0, size(docId))
+     * @return
+     */
+    public int getTermId(int docId, int index) {
+        return vectors[docId - firstDocId][index * 2];
+    }
+
+    /**
+     *
+     * @param docId
+     * @param index in [0, size(docId))
+     * @return
+     */
+    public int getFrequency(int docId, int index) {
+        return vectors[docId - firstDocId][index * 2 + 1];
+    }
+
+    // *** helper method
+    private static int[] grow(int[] docIds, int length) {
+        int[] grown = Arrays.copyOf(docIds, length);
+        Arrays.fill(grown, docIds.length, length, -1);
+        return grown;
+    }
+}
@@ -0,0 +1,280 @@
+package eecs4412.project.model;
+
+import java.util.Arrays;
+
+/**
+ * Corpus statistics of an InvertedIndexFile, kept up to date by its TermData as postings
+ * are added and removed: the number of terms per document frequency, the number of terms
+ * per total frequency with the max and min total over them, and the max frequency of a
+ * term per document.
+ * Only the totals some term has are counted, in an open addressing table, so it grows with
+ * the number of distinct totals, under sqrt(2 * tokens), rather than with the largest one.
+ * When the last term holding the max or min total moves, the max or min steps to the
+ * nearest total still held, terms are never rescanned.
+ */
+final class IndexStatistics {
+
+    private static final int INITIAL_CAPACITY = 16;
+    private static final int FREE = -1;
+
+    private int[] documentFrequencyCounts = new int[INITIAL_CAPACITY];
+    // total frequency of each slot, FREE if none, and the number of terms with that total
+    private int[] totals = freeSlots(INITIAL_CAPACITY);
+    private int[] totalCounts = new int[INITIAL_CAPACITY];
+    private int totalSize;
+    private int[] documentMaxFrequencies = new int[0];
+    private int termCount;
+    private int maxTotalFrequency = -1;
+    private int minTotalFrequency = -1;
+
+    /**
+     * a term with no postings yet
+     */
+    void addTerm() {
+        termCount++;
+        documentFrequencyCounts[0]++;
+        addTotal(0);
+    }
+
+    /**
+     *
+     * @param documentFrequency of the dropped term
+     * @param totalFrequency of the dropped term
+     */
+    void removeTerm(int documentFrequency, int totalFrequency) {
+        termCount--;
+        documentFrequencyCounts[documentFrequency]--;
+        removeTotal(totalFrequency);
+    }
+
+    /**
+     * postings of a term changed
+     * @param oldDocumentFrequency
+     * @param newDocumentFrequency
+     * @param oldTotalFrequency
+     * @param newTotalFrequency
+     */
+    void changeTerm(int oldDocumentFrequency, int newDocumentFrequency, int oldTotalFrequency, int newTotalFrequency) {
+        if(oldDocumentFrequency != newDocumentFrequency){
+            if(newDocumentFrequency >= documentFrequencyCounts.length){
+                documentFrequencyCounts = Arrays.copyOf(documentFrequencyCounts,
+                        Math.max(documentFrequencyCounts.length * 2, newDocumentFrequency + 1));
+            }
+            documentFrequencyCounts[oldDocumentFrequency]--;
+            documentFrequencyCounts[newDocumentFrequency]++;
+        }
+        if(oldTotalFrequency != newTotalFrequency){
+            // added first, so the max or min stepping off the old total stops at the new one
+            addTotal(newTotalFrequency);
+            removeTotal(oldTotalFrequency);
+        }
+    }
+
+    /**
+     * a term now occurs frequency times in docId
+     * @param docId
+     * @param frequency
+     */
+    void countInDocument(int docId, int frequency) {
+        if(docId >= documentMaxFrequencies.length){
+            documentMaxFrequencies = Arrays.copyOf(documentMaxFrequencies,
+                    Math.max(documentMaxFrequencies.length * 2, docId + 1));
+        }
+        if(frequency > documentMaxFrequencies[docId]){
+            documentMaxFrequencies[docId] = frequency;
+        }
+    }
+
+    /**
+     * documents were dropped and the others renumbered
+     * @param documentMap new docId of every docId, -1 for the dropped ones
+     */
+    void renumberDocuments(int[] documentMap) {
+        int documentCount = 0;
+        for(int docId = 0; docId < documentMap.length; docId++){
+            if(documentMap[docId] >= 0){
+                documentMaxFrequencies[documentMap[docId]] = getDocumentMaxFrequency(docId);
+                documentCount++;
+            }
+        }
+        if(documentCount < documentMaxFrequencies.length){
+            Arrays.fill(documentMaxFrequencies, documentCount, documentMaxFrequencies.length, 0);
+        }
+    }
+
+    /**
+     *
+     * @return the max total frequency of a term, -1 without terms
+     */
+    int getMaxTotalFrequency() {
+        return maxTotalFrequency;
+    }
+
+    /**
+     *
+     * @return the min total frequency of a term, -1 without terms
+     */
+    int getMinTotalFrequency() {
+        return minTotalFrequency;
+    }
+
+    /**
+     *
+     * @param min
+     * @param max
+     * @return number of terms whose document frequency is in [min, max]
+     */
+    int countTerms(int min, int max) {
+        int count = 0;
+        for(int documentFrequency = Math.max(0, min);
+                documentFrequency <= max && documentFrequency < documentFrequencyCounts.length; documentFrequency++){
+            count += documentFrequencyCounts[documentFrequency];
+        }
+        return count;
+    }
+
+    /**
+     *
+     * @param documentFrequency
+     * @return number of terms with that document frequency
+     */
+    int getDocumentFrequencyCount(int documentFrequency) {
+        return documentFrequency >= 0 && documentFrequency < documentFrequencyCounts.length
+                ? documentFrequencyCounts[documentFrequency] : 0;
+    }
+
+    /**
+     *
+     * @param docId
+     * @return the max frequency of a term in docId
+     */
+    int getDocumentMaxFrequency(int docId) {
+        return docId >= 0 && docId < documentMaxFrequencies.length ? documentMaxFrequencies[docId] : 0;
+    }
+
+    int getTermCount() {
+        return termCount;
+    }
+
+    /**
+     *
+     * @return number of distinct total frequencies held by the terms
+     */
+    int getTotalFrequencyCount() {
+        return totalSize;
+    }
+
+    // *** helper methods
+    private void addTotal(int total) {
+        if((totalSize + 1) * 2 > totals.length){
+            rehash(totals.length * 2);
+        }
+        int slot = slotOf(total);
+        if(totals[slot] == total){
+            totalCounts[slot]++;
+        } else {
+            totals[slot] = total;
+            totalCounts[slot] = 1;
+            totalSize++;
+        }
+        if(total > maxTotalFrequency){
+            maxTotalFrequency = total;
+        }
+        if(minTotalFrequency < 0 || total < minTotalFrequency){
+            minTotalFrequency = total;
+        }
+    }
+
+    private void removeTotal(int total) {
+        int slot = slotOf(total);
+        if(--totalCounts[slot] > 0){
+            return;
+        }
+        freeSlot(slot);
+        totalSize--;
+        if(totalSize == 0){
+            maxTotalFrequency = -1;
+            minTotalFrequency = -1;
+            return;
+        }
+        if(total == maxTotalFrequency){
+            maxTotalFrequency = nearestTotal(total, -1);
+        }
+        if(total == minTotalFrequency){
+            minTotalFrequency = nearestTotal(total, 1);
+        }
+    }
+
+    /**
+     * the total closest to from in the direction of step, every total held being on that side:
+     * stepped to when it is nearer than the table is long, found in one scan of it otherwise
+     */
+    private int nearestTotal(int from, int step) {
+        for(int distance = 1; distance < totals.length; distance++){
+            int total = from + step * distance;
+            if(total < 0){
+                break;
+            }
+            if(totals[slotOf(total)] == total){
+                return total;
+            }
+        }
+        int nearest = -1;
+        for(int total : totals){
+            if(total != FREE && (nearest < 0 || (step < 0 ? total > nearest : total < nearest))){
+                nearest = total;
+            }
+        }
+        return nearest;
+    }
+
+    private int slotOf(int total) {
+        int mask = totals.length - 1;
+        int slot = mix(total) & mask;
+        while(totals[slot] != FREE && totals[slot] != total){
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    // linear probing deletion: the entries after the slot that probed past it move back
+    private void freeSlot(int slot) {
+        int mask = totals.length - 1;
+        int hole = slot;
+        for(int next = (hole + 1) & mask; totals[next] != FREE; next = (next + 1) & mask){
+            int home = mix(totals[next]) & mask;
+            if(((next - home) & mask) >= ((next - hole) & mask)){
+                totals[hole] = totals[next];
+                totalCounts[hole] = totalCounts[next];
+                hole = next;
+            }
+        }
+        totals[hole] = FREE;
+        totalCounts[hole] = 0;
+    }
+
+    private void rehash(int capacity) {
+        int[] oldTotals = totals;
+        int[] oldCounts = totalCounts;
+        totals = freeSlots(capacity);
+        totalCounts = new int[capacity];
+        for(int i = 0; i < oldTotals.length; i++){
+            if(oldTotals[i] != FREE){
+                int slot = slotOf(oldTotals[i]);
+                totals[slot] = oldTotals[i];
+                totalCounts[slot] = oldCounts[i];
+            }
+        }
+    }
+
+    private static int[] freeSlots(int capacity) {
+        int[] slots = new int[capacity];
+        Arrays.fill(slots, FREE);
+        return slots;
+    }
+
+    private static int mix(int total) {
+        int hash = total * 0x9e3779b9;
+        return hash ^ (hash >>> 16);
+    }
+}
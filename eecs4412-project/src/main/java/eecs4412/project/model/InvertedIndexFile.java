@@ -1,27 +1,40 @@
 package eecs4412.project.model;
 
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Map;
-import java.util.Set;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public class InvertedIndexFile{
 
-    private Map<String, TermData> termMap;
-    private Set<String> documents;
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int COLUMN_WIDTH = 20;
+
+    private final Dictionary termDictionary;
+    private final Dictionary documentDictionary;
+    private final IndexStatistics statistics;
+    private ForwardIndex forwardIndex;
+    private TermData[] termsById;
+    private String lastDocument;
+    private int lastDocId;
+    private long[] documentSizes = new long[0];
+    private long[] documentModified = new long[0];
 
     public InvertedIndexFile() {
         super();
-        this.termMap = new HashMap<>();
-        this.documents = new HashSet<>();
-    }
-
-    public InvertedIndexFile(Map<String, TermData> termMap, Set<String> documents) {
-        this();
-        this.termMap = termMap;
-        this.documents = documents;
+        this.termDictionary = new Dictionary(INITIAL_CAPACITY);
+        this.documentDictionary = new Dictionary();
+        this.statistics = new IndexStatistics();
+        this.termsById = new TermData[INITIAL_CAPACITY];
     }
 
     /**
@@ -30,180 +43,486 @@ public class InvertedIndexFile{
      * @param document
      */
     public void mapTermToDoc(String term, String document) {
-        TermData termData = termMap.get(term);
-        if(termData == null){
-            termData = new TermData(term);
-            termMap.put(term, termData);
+        int termId = termDictionary.intern(term);
+        int docId = documentDictionary.intern(document);
+        getOrCreateTermData(termId).addTermFrequencyInDocument(docId);
+    }
+
+    /**
+     * maps the term held in buffer[offset, offset + length) to a document,
+     * creating the term String only the first time the term is seen
+     * @param buffer
+     * @param offset
+     * @param length
+     * @param document
+     * @return the new frequency of the term in the document, 1 for a new posting
+     */
+    public int mapTermToDoc(char[] buffer, int offset, int length, String document) {
+        if(document != lastDocument){
+            lastDocId = documentDictionary.intern(document);
+            lastDocument = document;
         }
-        termData.addTermFrequencyInDocument(document);
-        documents.add(document);
+        int termId = termDictionary.intern(buffer, offset, length);
+        return getOrCreateTermData(termId).addTermFrequencyInDocument(lastDocId);
+    }
+
+    /**
+     * registers a document, even if no term is mapped to it
+     * @param document
+     * @return the document id
+     */
+    public int addDocument(String document) {
+        return documentDictionary.intern(document);
+    }
+
+    /**
+     * registers a term, even if no document is mapped to it yet
+     * @param term
+     * @return the postings of the term
+     */
+    public TermData addTerm(String term) {
+        return getOrCreateTermData(termDictionary.intern(term));
+    }
+
+    /**
+     * drops a document and every posting of it, see removeDocuments
+     * @param document
+     * @return false if the document is not in the index
+     */
+    public boolean removeDocument(String document) {
+        int docId = documentDictionary.lookup(document);
+        if(docId < 0){
+            return false;
+        }
+        BitSet docIds = new BitSet();
+        docIds.set(docId);
+        removeDocuments(docIds);
+        return true;
+    }
+
+    /**
+     * drops documents and every posting of them in one pass over the terms; the other 
+     * documents keep their order and are renumbered down to fill the gaps, and terms left 
+     * without postings are removed. Only the postings from the first dropped document on 
+     * are re-encoded
+     * @param docIds
+     * @return number of documents dropped
+     */
+    public int removeDocuments(BitSet docIds) {
+        BitSet dropped = docIds.get(0, getDocumentCount());
+        if(dropped.isEmpty()){
+            return 0;
+        }
+        int[] documentMap = documentDictionary.remove(dropped);
+        for(int termId = 0; termId < liveLength(); termId++){
+            TermData termData = termsById[termId];
+            if(termData != null && termData.renumberDocuments(documentMap) > 0 && termData.getDocumentFrequency() == 0){
+                termsById[termId] = null;
+                statistics.removeTerm(0, termData.getTermTotalFrequncy());
+            }
+        }
+        statistics.renumberDocuments(documentMap);
+        for(int docId = 0; docId < documentMap.length; docId++){
+            if(documentMap[docId] >= 0){
+                setDocumentStamp(documentMap[docId], getDocumentSize(docId), getDocumentLastModified(docId));
+            }
+        }
+        if(getDocumentCount() < documentSizes.length){
+            Arrays.fill(documentSizes, getDocumentCount(), documentSizes.length, -1);
+            Arrays.fill(documentModified, getDocumentCount(), documentModified.length, -1);
+        }
+        lastDocument = null;
+        if(forwardIndex != null){
+            forwardIndex = null;
+            keepForwardIndex();
+        }
+        return dropped.cardinality();
+    }
+
+    /**
+     * records the size and modification time of the file a document was read from
+     * @param document
+     * @param size
+     * @param lastModified
+     */
+    public void setDocumentStamp(String document, long size, long lastModified) {
+        int docId = documentDictionary.lookup(document);
+        if(docId >= 0){
+            setDocumentStamp(docId, size, lastModified);
+        }
+    }
+
+    /**
+     * 
+     * @param docId
+     * @param size
+     * @param lastModified
+     */
+    public void setDocumentStamp(int docId, long size, long lastModified) {
+        if(docId >= documentSizes.length){
+            int length = Math.max(documentSizes.length * 2, docId + 1);
+            documentSizes = growStamps(documentSizes, length);
+            documentModified = growStamps(documentModified, length);
+        }
+        documentSizes[docId] = size;
+        documentModified[docId] = lastModified;
     }
 
     /**
      * 
+     * @param docId
+     * @return size of the file the document was read from, -1 if unknown
+     */
+    public long getDocumentSize(int docId) {
+        return docId < documentSizes.length ? documentSizes[docId] : -1;
+    }
+
+    /**
+     * 
+     * @param docId
+     * @return modification time of the file the document was read from, -1 if unknown
+     */
+    public long getDocumentLastModified(int docId) {
+        return docId < documentModified.length ? documentModified[docId] : -1;
+    }
+
+    /**
+     * merges a partial index built over a disjoint set of documents into this one
+     * @param other
+     */
+    public void merge(InvertedIndexFile other) {
+        int[] documentMap = new int[other.documentDictionary.size()];
+        for(int docId = 0; docId < documentMap.length; docId++){
+            documentMap[docId] = documentDictionary.intern(other.documentDictionary.get(docId));
+        }
+        for(int docId = 0; docId < documentMap.length; docId++){
+            if(other.getDocumentSize(docId) >= 0){
+                setDocumentStamp(documentMap[docId], other.getDocumentSize(docId), other.getDocumentLastModified(docId));
+            }
+        }
+        other.liveTerms().forEach(otherData ->
+            getOrCreateTermData(termDictionary.intern(otherData.getTerm())).merge(otherData, documentMap));
+    }
+
+    /**
+     *
      * @param term
      * @return
      */
     public int getTermTotalFrequncy(String term) {
-        return termMap.containsKey(term) ? termMap.get(term).getTermTotalFrequncy() : 0;
+        TermData termData = getTermData(term);
+        return termData != null ? termData.getTermTotalFrequncy() : 0;
     }
 
     /**
-     * 
+     *
      * @param term
      * @param document
      * @return
      */
     public int getTermFrequencyInDocument(String term, String document) {
-        return termMap.containsKey(term) ? termMap.get(term).getTermFrequencyInDocument(document) : 0;
+        TermData termData = getTermData(term);
+        int docId = documentDictionary.lookup(document);
+        return termData != null && docId >= 0 ? termData.getTermFrequencyInDocument(docId) : 0;
     }
 
     /**
-     * 
+     *
      * @param term
      * @return
      */
     public int getDocumentFrequency(String term) {
-        return termMap.containsKey(term) ? termMap.get(term).getDocumentFrequency() : 0;
+        TermData termData = getTermData(term);
+        return termData != null ? termData.getDocumentFrequency() : 0;
     }
 
     /**
-     * 
+     *
      * @param min
      * @param max
      * @return
      */
     public Collection<TermData> getInnerWords(int min, int max) {
-        return 
-                termMap.entrySet()
-                .stream()
-                .map(entry -> entry.getValue())
-                .filter(termData -> termData.getDocumentFrequency()>= min && termData.getDocumentFrequency()<= max)
-                .collect(Collectors.toList());
+        int inner = statistics.countTerms(min, max);
+        List<TermData> words = new ArrayList<>(inner);
+        for(int termId = 0; termId < liveLength() && words.size() < inner; termId++){
+            TermData termData = termsById[termId];
+            if(termData != null && termData.getDocumentFrequency() >= min && termData.getDocumentFrequency() <= max){
+                words.add(termData);
+            }
+        }
+        return words;
     }
 
     /**
-     * 
+     *
      * @param min
      * @param max
      * @return
      */
     public Collection<TermData> getOuterWords(int min, int max) {
-        return 
-                termMap.entrySet()
-                .stream()
-                .map(entry -> entry.getValue())
-                .filter(termData -> termData.getDocumentFrequency()< min || termData.getDocumentFrequency()>max)
-                .collect(Collectors.toList());
+        int outer = getTermCount() - statistics.countTerms(min, max);
+        List<TermData> words = new ArrayList<>(outer);
+        for(int termId = 0; termId < liveLength() && words.size() < outer; termId++){
+            TermData termData = termsById[termId];
+            if(termData != null && (termData.getDocumentFrequency() < min || termData.getDocumentFrequency() > max)){
+                words.add(termData);
+            }
+        }
+        return words;
     }
 
     /**
-     * 
+     * drops the terms whose document frequency is outside [min, max] in one pass over the 
+     * terms, none when the document frequency histogram says every term is inside
      * @param min
      * @param max
-     * @return
+     * @return number of terms dropped
      */
     public int trimIndex(int min, int max) {
-        Collection<TermData> trash = getOuterWords(min, max);
-        trash.stream()
-        .forEach(garbage -> termMap.remove(garbage.getTerm()));
-        return trash.size();
+        int outer = getTermCount() - statistics.countTerms(min, max);
+        if(outer == 0){
+            return 0;
+        }
+        for(int termId = 0; termId < liveLength(); termId++){
+            TermData termData = termsById[termId];
+            if(termData != null && (termData.getDocumentFrequency() < min || termData.getDocumentFrequency() > max)){
+                termsById[termId] = null;
+                statistics.removeTerm(termData.getDocumentFrequency(), termData.getTermTotalFrequncy());
+            }
+        }
+        return outer;
     }
 
     /**
-     * 
-     * @return
+     *
+     * @return the max total frequency of a term, -1 if there are no terms
      */
     public int getMaxTermFrequency() {
-        int max = -1;
-        if(!termMap.isEmpty()){
-            max = termMap.entrySet()
-                    .stream()
-                    .map(entry -> entry.getValue().getTermTotalFrequncy())
-                    .max(Integer::max)
-                    .get();
-        }
-        return max;
+        return statistics.getMaxTotalFrequency();
     }
 
     /**
-     * 
-     * @return
+     *
+     * @return the min total frequency of a term, -1 if there are no terms
      */
     public int getMinTermFrequency() {
-        int min = -1;
-        if(!termMap.isEmpty()){
-            min = termMap.entrySet()
-                    .stream()
-                    .map(entry -> entry.getValue().getTermTotalFrequncy())
-                    .min(Integer::min)
-                    .get();
-        }
-        return min;
+        return statistics.getMinTotalFrequency();
     }
 
     /**
-     * 
+     *
+     * @param documentFrequency
+     * @return number of terms found in exactly documentFrequency documents
+     */
+    public int getDocumentFrequencyCount(int documentFrequency) {
+        return statistics.getDocumentFrequencyCount(documentFrequency);
+    }
+
+    /**
+     *
+     * @return number of distinct total frequencies of the terms
+     */
+    public int getDistinctTotalFrequencies() {
+        return statistics.getTotalFrequencyCount();
+    }
+
+    /**
+     *
+     * @param min
+     * @param max
+     * @return number of terms whose document frequency is in [min, max]
+     */
+    public int getTermCount(int min, int max) {
+        return statistics.countTerms(min, max);
+    }
+
+    /**
+     *
+     * @param docId
+     * @return the highest frequency of a term in the document, as indexed: terms trimmed
+     * since still count
+     */
+    public int getDocumentMaxTermFrequency(int docId) {
+        return statistics.getDocumentMaxFrequency(docId);
+    }
+
+    /**
+     *
      * @return
      */
     public Collection<String> getTerms() {
-        return termMap.keySet();
+        return liveTerms()
+                .map(TermData::getTerm)
+                .collect(Collectors.toList());
     }
-    
+
     /**
-     * 
+     *
+     * @param term
+     * @return the postings of term or null if the term is not indexed
+     */
+    public TermData getTermData(String term) {
+        int termId = termDictionary.lookup(term);
+        return termId >= 0 && termId < termsById.length ? termsById[termId] : null;
+    }
+
+    /**
+     *
+     * @param termId
+     * @return the postings of termId or null if the term is not indexed
+     */
+    public TermData getTermData(int termId) {
+        return termId < termsById.length ? termsById[termId] : null;
+    }
+
+    /**
+     *
+     * @return the indexed terms in term id order
+     */
+    public Stream<TermData> streamTermData() {
+        return liveTerms();
+    }
+
+    /**
+     *
      * @return
      */
     public int getTermCount() {
-        return termMap.size();
+        return statistics.getTermCount();
     }
 
     /**
-     * 
+     *
      * @param term
      * @return
      */
     public boolean containsTerm(String term) {
-        return termMap.containsKey(term);
+        return getTermData(term) != null;
     }
 
     /**
-     * 
+     *
      * @return
      */
     public int getDocumentCount() {
-        return documents.size();
+        return documentDictionary.size();
     }
 
     @Override
     public String toString() {
-        return termMap.entrySet()
-        .stream()
-        .map(entry -> {
-            TermData termData = entry.getValue();
-            StringBuffer sb = new StringBuffer();
-            documents.stream()
-            .filter(doc -> termData.getTermFrequencyInDocument(doc) > 0)
-            .forEach(doc -> sb.append(String.format("%-20s %-20s %-20d %s", termData.getTerm(), doc, termData.getTermFrequencyInDocument(doc), System.lineSeparator())));
-            return sb.toString();   
-        })
-        .sorted()
-        .collect(Collectors.joining());
+        StringWriter out = new StringWriter();
+        try {
+            writeTo(out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toString();
+    }
+
+    /**
+     * writes one "term document frequency" line per posting, in term order then document id 
+     * order, walking each term's postings only
+     * @param out
+     * @throws IOException
+     */
+    public void writeTo(Writer out) throws IOException {
+        String lineSeparator = System.lineSeparator();
+        StringBuilder line = new StringBuilder();
+        TermData[] sorted = liveTerms()
+                .sorted(Comparator.comparing(TermData::getTerm))
+                .toArray(TermData[]::new);
+        for(TermData termData : sorted){
+            String term = pad(new StringBuilder(), termData.getTerm()).toString();
+            Postings.Cursor cursor = termData.getPostings().cursor();
+            while(cursor.next()){
+                line.setLength(0);
+                line.append(term);
+                pad(line, documentDictionary.get(cursor.docId()));
+                pad(line, Integer.toString(cursor.frequency()));
+                line.append(lineSeparator);
+                out.append(line);
+            }
+        }
+    }
+
+    /**
+     *
+     * @return document names in document id order
+     */
+    public List<String> getDocuments() {
+        return documentDictionary.names();
+    }
+
+    /**
+     *
+     * @return the terms of each document, null unless keepForwardIndex was called
+     */
+    public ForwardIndex getForwardIndex() {
+        return forwardIndex;
+    }
+
+    /**
+     * builds a forward index of every term from the postings, kept up to date as terms
+     * are counted from then on and rebuilt when documents are removed; it holds every 
+     * posting a second time, uncompressed
+     * @return
+     */
+    public ForwardIndex keepForwardIndex() {
+        if(forwardIndex == null){
+            forwardIndex = new ForwardIndex();
+            for(int termId = 0; termId < liveLength(); termId++){
+                if(termsById[termId] != null){
+                    forwardIndex.addPostings(termsById[termId], termId);
+                    termsById[termId].setForwardIndex(forwardIndex);
+                }
+            }
+        }
+        return forwardIndex;
+    }
+
+    public Dictionary getTermDictionary() {
+        return termDictionary;
     }
 
-    public Map<String, TermData> getTermMap() {
-        return termMap;
+    public Dictionary getDocumentDictionary() {
+        return documentDictionary;
     }
 
-    public void setTermMap(Map<String, TermData> termMap) {
-        this.termMap = termMap;
+    // *** helper methods
+    private Stream<TermData> liveTerms() {
+        return Arrays.stream(termsById, 0, liveLength())
+                .filter(Objects::nonNull);
     }
 
-    public Set<String> getDocuments() {
-        return documents;
+    private int liveLength() {
+        return Math.min(termsById.length, termDictionary.size());
     }
 
-    public void setDocuments(Set<String> documents) {
-        this.documents = documents;
+    // same as String.format("%-20s ", value)
+    static StringBuilder pad(StringBuilder sb, String value) {
+        sb.append(value);
+        for(int i = value.length(); i < COLUMN_WIDTH; i++){
+            sb.append(' ');
+        }
+        return sb.append(' ');
+    }
+
+    private static long[] growStamps(long[] stamps, int length) {
+        long[] grown = Arrays.copyOf(stamps, length);
+        Arrays.fill(grown, stamps.length, length, -1);
+        return grown;
+    }
+
+    private TermData getOrCreateTermData(int termId) {
+        if(termId >= termsById.length){
+            termsById = Arrays.copyOf(termsById, Math.max(termsById.length * 2, termId + 1));
+        }
+        TermData termData = termsById[termId];
+        if(termData == null){
+            termData = new TermData(termDictionary.get(termId), termId, documentDictionary, statistics, forwardIndex);
+            termsById[termId] = termData;
+        }
+        return termData;
     }
-}
\ No newline at end of file
+}
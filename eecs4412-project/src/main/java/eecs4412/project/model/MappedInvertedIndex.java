@@ -0,0 +1,517 @@
+package eecs4412.project.model;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Binary on-disk form of an InvertedIndexFile, read back through memory mapped buffers.
+ * <pre>
+ * header    magic, version, documentCount, termCount, documentsOffset, termsOffset, postingsOffset
+ * documents (documentCount + 1) name offsets, then the UTF-8 document names, then
+ *           documentCount (size, lastModified) longs of the files they were read from
+ * terms     termCount entries of (postingsPosition, documentFrequency, totalFrequency, nameOffset, nameLength)
+ *           sorted by term, then the UTF-8 term names
+ * postings  per term, documentFrequency (docId, frequency) int pairs sorted by docId
+ * </pre>
+ * All numbers are big-endian. Nothing is decoded when the file is opened, so opening
+ * costs the same whatever the size of the index, and the postings of selected terms can
+ * be read back a range of documents at a time without decoding the index into memory.
+ */
+public class MappedInvertedIndex implements Closeable {
+
+    public static final int MAGIC = 0x45494458; // EIDX
+    public static final int VERSION = 2;
+    private static final int VERSION_WITHOUT_STAMPS = 1;
+
+    private static final int HEADER_SIZE = 40;
+    private static final int TERM_ENTRY_SIZE = 24;
+    private static final int WINDOW_BITS = 30;
+    private static final long WINDOW_MASK = (1L << WINDOW_BITS) - 1;
+    // windows overlap by this much so that no value straddles two of them
+    private static final int WINDOW_OVERLAP = 8;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer[] windows;
+    private final int documentCount;
+    private final int termCount;
+    private final long documentsOffset;
+    private final long termsOffset;
+    private final long stampsOffset;
+
+    private MappedInvertedIndex(FileChannel channel) throws IOException {
+        super();
+        this.channel = channel;
+        long size = channel.size();
+        windows = new MappedByteBuffer[(int) ((size + WINDOW_MASK) >>> WINDOW_BITS)];
+        for(int i = 0; i < windows.length; i++){
+            long start = (long) i << WINDOW_BITS;
+            windows[i] = channel.map(FileChannel.MapMode.READ_ONLY, start,
+                    Math.min(size - start, (1L << WINDOW_BITS) + WINDOW_OVERLAP));
+        }
+        if(size < HEADER_SIZE || getInt(0) != MAGIC 
+                || (getInt(4) != VERSION && getInt(4) != VERSION_WITHOUT_STAMPS)){
+            throw new IOException("not a binary inverted index file");
+        }
+        documentCount = getInt(8);
+        termCount = getInt(12);
+        documentsOffset = getLong(16);
+        termsOffset = getLong(24);
+        stampsOffset = getInt(4) == VERSION_WITHOUT_STAMPS ? -1 
+                : documentsOffset + 4L * (documentCount + 1) + getInt(documentsOffset + 4L * documentCount);
+    }
+
+    /**
+     * memory map a file written by write
+     * @param file
+     * @return
+     * @throws IOException
+     */
+    public static MappedInvertedIndex open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            return new MappedInvertedIndex(channel);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * write the index in binary form; the file is replaced atomically, so it may be the 
+     * file the index was loaded from
+     * @param index
+     * @param file
+     * @throws IOException
+     */
+    public static void write(InvertedIndexFile index, Path file) throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        writeFile(index, temp);
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * write an index whose postings were already laid out in postingsFile, as (docId, frequency) 
+     * int pairs term after term in term order; the file is replaced atomically
+     * @param documents in docId order
+     * @param documentSizes
+     * @param documentModified
+     * @param terms sorted
+     * @param documentFrequencies of the terms
+     * @param totalFrequencies of the terms
+     * @param postingsFile
+     * @param file
+     * @throws IOException
+     */
+    public static void write(List<String> documents, long[] documentSizes, long[] documentModified, List<String> terms,
+            int[] documentFrequencies, int[] totalFrequencies, Path postingsFile, Path file) throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16))){
+            writeSections(out, documents, documentSizes, documentModified, terms, documentFrequencies, totalFrequencies);
+            Files.copy(postingsFile, out);
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public int getDocumentCount() {
+        return documentCount;
+    }
+
+    public int getTermCount() {
+        return termCount;
+    }
+
+    /**
+     *
+     * @param docId
+     * @return
+     */
+    public String getDocument(int docId) {
+        long heap = documentsOffset + 4L * (documentCount + 1);
+        int start = getInt(documentsOffset + 4L * docId);
+        int end = getInt(documentsOffset + 4L * (docId + 1));
+        return getString(heap + start, end - start);
+    }
+
+    /**
+     *
+     * @return document names in docId order
+     */
+    public List<String> getDocuments() {
+        List<String> documents = new ArrayList<>(documentCount);
+        for(int docId = 0; docId < documentCount; docId++){
+            documents.add(getDocument(docId));
+        }
+        return documents;
+    }
+
+    /**
+     *
+     * @param docId
+     * @return size of the file the document was read from, -1 if unknown
+     */
+    public long getDocumentSize(int docId) {
+        return stampsOffset < 0 ? -1 : getLong(stampsOffset + 16L * docId);
+    }
+
+    /**
+     *
+     * @param docId
+     * @return modification time of the file the document was read from, -1 if unknown
+     */
+    public long getDocumentLastModified(int docId) {
+        return stampsOffset < 0 ? -1 : getLong(stampsOffset + 16L * docId + 8);
+    }
+
+    /**
+     *
+     * @param termIndex position of the term in term order, in [0, getTermCount())
+     * @return
+     */
+    public String getTerm(int termIndex) {
+        long entry = termsOffset + (long) TERM_ENTRY_SIZE * termIndex;
+        long heap = termsOffset + (long) TERM_ENTRY_SIZE * termCount;
+        return getString(heap + getInt(entry + 16), getInt(entry + 20));
+    }
+
+    /**
+     *
+     * @param term
+     * @return the term index of term or -1 if it is not in the index
+     */
+    public int lookup(String term) {
+        int low = 0;
+        int high = termCount - 1;
+        while(low <= high){
+            int mid = (low + high) >>> 1;
+            int cmp = getTerm(mid).compareTo(term);
+            if(cmp < 0){
+                low = mid + 1;
+            } else if(cmp > 0){
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     *
+     * @param termIndex
+     * @return
+     */
+    public int getDocumentFrequency(int termIndex) {
+        return getInt(termsOffset + (long) TERM_ENTRY_SIZE * termIndex + 8);
+    }
+
+    /**
+     *
+     * @param termIndex
+     * @return
+     */
+    public int getTermTotalFrequncy(int termIndex) {
+        return getInt(termsOffset + (long) TERM_ENTRY_SIZE * termIndex + 12);
+    }
+
+    /**
+     *
+     * @param termIndex
+     * @param posting in [0, getDocumentFrequency(termIndex)), postings are in docId order
+     * @return
+     */
+    public int getPostingDocId(int termIndex, int posting) {
+        return getInt(getLong(termsOffset + (long) TERM_ENTRY_SIZE * termIndex) + 8L * posting);
+    }
+
+    /**
+     *
+     * @param termIndex
+     * @param posting in [0, getDocumentFrequency(termIndex))
+     * @return
+     */
+    public int getPostingFrequency(int termIndex, int posting) {
+        return getInt(getLong(termsOffset + (long) TERM_ENTRY_SIZE * termIndex) + 8L * posting + 4);
+    }
+
+    /**
+     *
+     * @param termIndex
+     * @param docId
+     * @return
+     */
+    public int getTermFrequencyInDocument(int termIndex, int docId) {
+        long postings = getLong(termsOffset + (long) TERM_ENTRY_SIZE * termIndex);
+        int low = 0;
+        int high = getDocumentFrequency(termIndex) - 1;
+        while(low <= high){
+            int mid = (low + high) >>> 1;
+            int midDoc = getInt(postings + 8L * mid);
+            if(midDoc < docId){
+                low = mid + 1;
+            } else if(midDoc > docId){
+                high = mid - 1;
+            } else {
+                return getInt(postings + 8L * mid + 4);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     *
+     * @param min
+     * @param max
+     * @return term indexes, in term order, of the terms whose document frequency is in [min, max]
+     */
+    public int[] getTermIndexes(int min, int max) {
+        int[] termIndexes = new int[termCount];
+        int count = 0;
+        for(int termIndex = 0; termIndex < termCount; termIndex++){
+            int documentFrequency = getDocumentFrequency(termIndex);
+            if(documentFrequency >= min && documentFrequency <= max){
+                termIndexes[count++] = termIndex;
+            }
+        }
+        return Arrays.copyOf(termIndexes, count);
+    }
+
+    /**
+     *
+     * @param termIndexes terms to read, their position in it is their column
+     * @return a reader of the postings of the terms, document range after document range
+     */
+    public DocumentReader documentReader(int[] termIndexes) {
+        return new DocumentReader(termIndexes);
+    }
+
+    /**
+     * writes one "term document frequency" line per posting of the terms, in the layout of
+     * InvertedIndexFile.writeTo, straight from the mapped postings
+     * @param out
+     * @param termIndexes in term order
+     * @throws IOException
+     */
+    public void writeTo(Writer out, int[] termIndexes) throws IOException {
+        List<String> documents = getDocuments();
+        String lineSeparator = System.lineSeparator();
+        StringBuilder line = new StringBuilder();
+        for(int termIndex : termIndexes){
+            String term = InvertedIndexFile.pad(new StringBuilder(), getTerm(termIndex)).toString();
+            long postings = getLong(termsOffset + (long) TERM_ENTRY_SIZE * termIndex);
+            for(int i = 0; i < getDocumentFrequency(termIndex); i++){
+                line.setLength(0);
+                line.append(term);
+                InvertedIndexFile.pad(line, documents.get(getInt(postings + 8L * i)));
+                InvertedIndexFile.pad(line, Integer.toString(getInt(postings + 8L * i + 4)));
+                line.append(lineSeparator);
+                out.append(line);
+            }
+        }
+    }
+
+    /**
+     * decode the whole file into an in-memory index
+     * @return
+     */
+    public InvertedIndexFile toInvertedIndexFile() {
+        return toInvertedIndexFile(0, Integer.MAX_VALUE);
+    }
+
+    /**
+     * decode every document but only the terms whose document frequency is in [min, max], 
+     * the index trimIndex(min, max) would leave
+     * @param min
+     * @param max
+     * @return
+     */
+    public InvertedIndexFile toInvertedIndexFile(int min, int max) {
+        InvertedIndexFile index = new InvertedIndexFile();
+        for(int docId = 0; docId < documentCount; docId++){
+            index.addDocument(getDocument(docId));
+            index.setDocumentStamp(docId, getDocumentSize(docId), getDocumentLastModified(docId));
+        }
+        for(int termIndex : getTermIndexes(min, max)){
+            TermData termData = index.addTerm(getTerm(termIndex));
+            long postings = getLong(termsOffset + (long) TERM_ENTRY_SIZE * termIndex);
+            for(int i = 0; i < getDocumentFrequency(termIndex); i++){
+                termData.addTermFrequencyInDocument(getInt(postings + 8L * i), getInt(postings + 8L * i + 4));
+            }
+        }
+        return index;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Reads the postings of some terms as forward indexes of consecutive ranges of documents,
+     * through the mapping: only the position reached in the postings of each term is held
+     * between ranges, so the rows of an index bigger than the heap are built a range at a time
+     */
+    public class DocumentReader {
+        private final long[] positions;
+        private final int[] remaining;
+
+        private DocumentReader(int[] termIndexes) {
+            positions = new long[termIndexes.length];
+            remaining = new int[termIndexes.length];
+            for(int column = 0; column < termIndexes.length; column++){
+                positions[column] = getLong(termsOffset + (long) TERM_ENTRY_SIZE * termIndexes[column]);
+                remaining[column] = getDocumentFrequency(termIndexes[column]);
+            }
+        }
+
+        /**
+         * the pairs of the documents in [first, last), keyed by column and in column order;
+         * ranges are read in increasing order, postings before first are skipped
+         * @param first
+         * @param last
+         * @return
+         */
+        public ForwardIndex read(int first, int last) {
+            ForwardIndex vectors = new ForwardIndex(first);
+            for(int column = 0; column < positions.length; column++){
+                for(; remaining[column] > 0; remaining[column]--, positions[column] += 8){
+                    int docId = getInt(positions[column]);
+                    if(docId >= last){
+                        break;
+                    }
+                    if(docId >= first){
+                        int frequency = getInt(positions[column] + 4);
+                        vectors.count(docId, column, frequency, frequency);
+                    }
+                }
+            }
+            return vectors;
+        }
+    }
+
+    // *** helper methods
+    private static void writeFile(InvertedIndexFile index, Path file) throws IOException {
+        List<String> documents = index.getDocuments();
+        List<TermData> terms = index.streamTermData()
+                .sorted(Comparator.comparing(TermData::getTerm))
+                .collect(Collectors.toList());
+        long[] documentSizes = new long[documents.size()];
+        long[] documentModified = new long[documents.size()];
+        for(int docId = 0; docId < documentSizes.length; docId++){
+            documentSizes[docId] = index.getDocumentSize(docId);
+            documentModified[docId] = index.getDocumentLastModified(docId);
+        }
+        int[] documentFrequencies = terms.stream().mapToInt(TermData::getDocumentFrequency).toArray();
+        int[] totalFrequencies = terms.stream().mapToInt(TermData::getTermTotalFrequncy).toArray();
+        List<String> termNames = terms.stream().map(TermData::getTerm).collect(Collectors.toList());
+
+        try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 1 << 16))){
+            writeSections(out, documents, documentSizes, documentModified, termNames, documentFrequencies, totalFrequencies);
+            for(TermData termData : terms){
+                Postings.Cursor cursor = termData.getPostings().cursor();
+                while(cursor.next()){
+                    out.writeInt(cursor.docId());
+                    out.writeInt(cursor.frequency());
+                }
+            }
+        }
+    }
+
+    /**
+     * writes everything but the postings
+     */
+    private static void writeSections(DataOutputStream out, List<String> documents, long[] documentSizes, 
+            long[] documentModified, List<String> terms, int[] documentFrequencies, int[] totalFrequencies) throws IOException {
+        byte[][] documentNames = documents.stream()
+                .map(document -> document.getBytes(StandardCharsets.UTF_8))
+                .toArray(byte[][]::new);
+        byte[][] termNames = terms.stream()
+                .map(term -> term.getBytes(StandardCharsets.UTF_8))
+                .toArray(byte[][]::new);
+
+        long documentsOffset = HEADER_SIZE;
+        long termsOffset = documentsOffset + 4L * (documentNames.length + 1) + heapSize(documentNames)
+                + 16L * documentNames.length;
+        long postingsOffset = termsOffset + (long) TERM_ENTRY_SIZE * termNames.length + heapSize(termNames);
+
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(documentNames.length);
+        out.writeInt(termNames.length);
+        out.writeLong(documentsOffset);
+        out.writeLong(termsOffset);
+        out.writeLong(postingsOffset);
+
+        writeHeap(out, documentNames);
+        for(int docId = 0; docId < documentNames.length; docId++){
+            out.writeLong(documentSizes[docId]);
+            out.writeLong(documentModified[docId]);
+        }
+
+        long postingsPosition = postingsOffset;
+        int nameOffset = 0;
+        for(int i = 0; i < termNames.length; i++){
+            out.writeLong(postingsPosition);
+            out.writeInt(documentFrequencies[i]);
+            out.writeInt(totalFrequencies[i]);
+            out.writeInt(nameOffset);
+            out.writeInt(termNames[i].length);
+            postingsPosition += 8L * documentFrequencies[i];
+            nameOffset += termNames[i].length;
+        }
+        for(byte[] name : termNames){
+            out.write(name);
+        }
+    }
+
+    private int getInt(long position) {
+        return windows[(int) (position >>> WINDOW_BITS)].getInt((int) (position & WINDOW_MASK));
+    }
+
+    private long getLong(long position) {
+        return windows[(int) (position >>> WINDOW_BITS)].getLong((int) (position & WINDOW_MASK));
+    }
+
+    private String getString(long position, int length) {
+        byte[] bytes = new byte[length];
+        for(int i = 0; i < length; i++){
+            long at = position + i;
+            bytes[i] = windows[(int) (at >>> WINDOW_BITS)].get((int) (at & WINDOW_MASK));
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static long heapSize(byte[][] names) {
+        long size = 0;
+        for(byte[] name : names){
+            size += name.length;
+        }
+        return size;
+    }
+
+    private static void writeHeap(DataOutputStream out, byte[][] names) throws IOException {
+        int offset = 0;
+        for(byte[] name : names){
+            out.writeInt(offset);
+            offset += name.length;
+        }
+        out.writeInt(offset);
+        for(byte[] name : names){
+            out.write(name);
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package eecs4412.project.model;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Multinomial Naive Bayes over ham/spam, trained straight from the postings of an
+ * InvertedIndexFile, or of a MappedInvertedIndex, with add-one smoothing. Log priors and log likelihoods are kept in
+ * primitive arrays, the two classes of a term side by side, so scoring an email is one
+ * dictionary lookup and two additions per token.
+ */
+public class NaiveBayesClassifier {
+
+    public static final int MAGIC = 0x454e4243; // ENBC
+    public static final int VERSION = 1;
+    public static final int HAM = 0;
+    public static final int SPAM = 1;
+    public static final String[] LABELS = {"H", "S"};
+
+    private final Dictionary vocabulary;
+    private final double[] logPriors;
+    private final double[] logLikelihoods;
+
+    /**
+     *
+     * @param terms vocabulary, in term index order
+     * @param logPriors indexed by class
+     * @param logLikelihoods indexed by term * 2 + class
+     */
+    public NaiveBayesClassifier(List<String> terms, double[] logPriors, double[] logLikelihoods) {
+        super();
+        this.vocabulary = new Dictionary(terms.size());
+        terms.forEach(vocabulary::intern);
+        this.logPriors = logPriors;
+        this.logLikelihoods = logLikelihoods;
+    }
+
+    /**
+     * class of a document, from its name
+     * @param document
+     * @return HAM or SPAM
+     */
+    public static int classOf(String document) {
+        return document.toLowerCase().contains("ham") ? HAM : SPAM;
+    }
+
+    /**
+     * train over the given terms of the index, usually the selected attributes
+     * @param index
+     * @param terms
+     * @return
+     */
+    public static NaiveBayesClassifier train(InvertedIndexFile index, Collection<String> terms) {
+        int[] documentClasses = documentClasses(index.getDocuments());
+        String[] vocabulary = terms.toArray(new String[0]);
+        long[] counts = new long[vocabulary.length * 2];
+        long[] classTotals = new long[2];
+        for(int term = 0; term < vocabulary.length; term++){
+            TermData termData = index.getTermData(vocabulary[term]);
+            if(termData == null){
+                continue;
+            }
+            Postings.Cursor cursor = termData.getPostings().cursor();
+            while(cursor.next()){
+                int documentClass = documentClasses[cursor.docId()];
+                counts[term * 2 + documentClass] += cursor.frequency();
+                classTotals[documentClass] += cursor.frequency();
+            }
+        }
+        return build(vocabulary, documentClasses, counts, classTotals);
+    }
+
+    /**
+     * train over the given terms of a mapped index, reading their postings through the mapping
+     * @param index
+     * @param termIndexes usually the selected attributes
+     * @return
+     */
+    public static NaiveBayesClassifier train(MappedInvertedIndex index, int[] termIndexes) {
+        int[] documentClasses = documentClasses(index.getDocuments());
+        String[] vocabulary = new String[termIndexes.length];
+        long[] counts = new long[vocabulary.length * 2];
+        long[] classTotals = new long[2];
+        for(int term = 0; term < vocabulary.length; term++){
+            vocabulary[term] = index.getTerm(termIndexes[term]);
+            for(int posting = 0; posting < index.getDocumentFrequency(termIndexes[term]); posting++){
+                int documentClass = documentClasses[index.getPostingDocId(termIndexes[term], posting)];
+                int frequency = index.getPostingFrequency(termIndexes[term], posting);
+                counts[term * 2 + documentClass] += frequency;
+                classTotals[documentClass] += frequency;
+            }
+        }
+        return build(vocabulary, documentClasses, counts, classTotals);
+    }
+
+    /**
+     *
+     * @param file
+     * @return
+     * @throws IOException
+     */
+    public static NaiveBayesClassifier load(Path file) throws IOException {
+        try(DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))){
+            if(in.readInt() != MAGIC || in.readInt() != VERSION){
+                throw new IOException("not a classifier file");
+            }
+            double[] logPriors = {in.readDouble(), in.readDouble()};
+            String[] terms = new String[in.readInt()];
+            double[] logLikelihoods = new double[terms.length * 2];
+            for(int term = 0; term < terms.length; term++){
+                terms[term] = in.readUTF();
+                logLikelihoods[term * 2 + HAM] = in.readDouble();
+                logLikelihoods[term * 2 + SPAM] = in.readDouble();
+            }
+            return new NaiveBayesClassifier(Arrays.asList(terms), logPriors, logLikelihoods);
+        }
+    }
+
+    /**
+     *
+     * @param file
+     * @throws IOException
+     */
+    public void save(Path file) throws IOException {
+        try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))){
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeDouble(logPriors[HAM]);
+            out.writeDouble(logPriors[SPAM]);
+            out.writeInt(vocabulary.size());
+            for(int term = 0; term < vocabulary.size(); term++){
+                out.writeUTF(vocabulary.get(term));
+                out.writeDouble(logLikelihoods[term * 2 + HAM]);
+                out.writeDouble(logLikelihoods[term * 2 + SPAM]);
+            }
+        }
+    }
+
+    /**
+     *
+     * @param buffer
+     * @param offset
+     * @param length
+     * @return index of the term in buffer[offset, offset + length), -1 if it is unknown
+     */
+    public int lookup(char[] buffer, int offset, int length) {
+        return vocabulary.lookup(buffer, offset, length);
+    }
+
+    /**
+     *
+     * @param documentClass HAM or SPAM
+     * @return
+     */
+    public double getLogPrior(int documentClass) {
+        return logPriors[documentClass];
+    }
+
+    /**
+     *
+     * @param term
+     * @param documentClass HAM or SPAM
+     * @return log P(term | documentClass)
+     */
+    public double getLogLikelihood(int term, int documentClass) {
+        return logLikelihoods[term * 2 + documentClass];
+    }
+
+    /**
+     *
+     * @return number of terms in the vocabulary
+     */
+    public int size() {
+        return vocabulary.size();
+    }
+
+    // *** helper methods
+    private static int[] documentClasses(List<String> documents) {
+        int[] documentClasses = new int[documents.size()];
+        for(int docId = 0; docId < documentClasses.length; docId++){
+            documentClasses[docId] = classOf(documents.get(docId));
+        }
+        return documentClasses;
+    }
+
+    private static NaiveBayesClassifier build(String[] vocabulary, int[] documentClasses, long[] counts,
+            long[] classTotals) {
+        double[] classDocuments = new double[2];
+        for(int documentClass : documentClasses){
+            classDocuments[documentClass]++;
+        }
+        double[] logPriors = new double[2];
+        for(int documentClass = 0; documentClass < 2; documentClass++){
+            // add-one smoothing on the priors too, a class absent from training is not impossible
+            logPriors[documentClass] = Math.log((classDocuments[documentClass] + 1) / (documentClasses.length + 2));
+        }
+        double[] logLikelihoods = new double[counts.length];
+        for(int i = 0; i < counts.length; i++){
+            logLikelihoods[i] = Math.log((counts[i] + 1d) / (classTotals[i & 1] + vocabulary.length));
+        }
+        return new NaiveBayesClassifier(Arrays.asList(vocabulary), logPriors, logLikelihoods);
+    }
+}
@@ -0,0 +1,351 @@
+package eecs4412.project.model;
+
+import java.util.Arrays;
+
+/**
+ * Postings list of a term, sorted by docId and compressed in blocks of BLOCK_SIZE
+ * postings: the docId of the first posting of a block is kept in a skip table, then each
+ * posting is its docId gap to the previous one and its frequency, both variable-byte
+ * encoded, so the common small gaps and frequencies take one byte each.
+ * The newest postings stay uncompressed in a tail of at most BLOCK_SIZE pairs, which is
+ * encoded once full; documents are indexed in docId order, so appending and counting in
+ * the last document only ever touch the tail. Adding an older docId or removing one
+ * decodes and re-encodes the list.
+ */
+public class Postings {
+
+    public static final int BLOCK_SIZE = 128;
+    private static final int INITIAL_CAPACITY = 2;
+    private static final int[] EMPTY = new int[0];
+    private static final byte[] NO_BYTES = new byte[0];
+
+    // compressed blocks, back to back
+    private byte[] bytes = NO_BYTES;
+    private int byteSize;
+    // skip table: docId of the first posting and start in bytes of each block
+    private int[] blockDocIds = EMPTY;
+    private int[] blockOffsets = EMPTY;
+    private int blockCount;
+    // (docId, frequency) pairs after the last block, never empty once a posting is added
+    private int[] tail;
+    private int tailSize;
+
+    public Postings() {
+        super();
+        this.tail = new int[INITIAL_CAPACITY * 2];
+    }
+
+    /**
+     * counts one more occurrence of the term in docId
+     * @param docId
+     * @return the new frequency of the term in docId
+     */
+    public int add(int docId) {
+        return add(docId, 1);
+    }
+
+    /**
+     * counts frequency more occurrences of the term in docId
+     * @param docId
+     * @param frequency
+     * @return the new frequency of the term in docId
+     */
+    public int add(int docId, int frequency) {
+        // documents are indexed one after the other, so the hit is almost always at the tail
+        if(tailSize > 0 && tail[(tailSize - 1) * 2] == docId){
+            return tail[(tailSize - 1) * 2 + 1] += frequency;
+        }
+        if(tailSize == 0 || tail[(tailSize - 1) * 2] < docId){
+            append(docId, frequency);
+            return frequency;
+        }
+        if(docId >= tail[0]){
+            int index = search(docId);
+            if(index >= 0){
+                return tail[index * 2 + 1] += frequency;
+            }
+        }
+        int[] pairs = toArray();
+        int index = search(pairs, pairs.length / 2, docId);
+        if(index >= 0){
+            pairs[index * 2 + 1] += frequency;
+            rebuild(pairs, pairs.length / 2);
+            return pairs[index * 2 + 1];
+        }
+        index = -index - 1;
+        int[] inserted = new int[pairs.length + 2];
+        System.arraycopy(pairs, 0, inserted, 0, index * 2);
+        inserted[index * 2] = docId;
+        inserted[index * 2 + 1] = frequency;
+        System.arraycopy(pairs, index * 2, inserted, index * 2 + 2, pairs.length - index * 2);
+        rebuild(inserted, inserted.length / 2);
+        return frequency;
+    }
+
+    /**
+     * drops docId from the list
+     * @param docId
+     * @return the frequency the term had in docId, 0 when absent
+     */
+    public int remove(int docId) {
+        int frequency = frequency(docId);
+        if(frequency == 0){
+            return 0;
+        }
+        int[] pairs = toArray();
+        int index = search(pairs, pairs.length / 2, docId);
+        System.arraycopy(pairs, index * 2 + 2, pairs, index * 2, pairs.length - index * 2 - 2);
+        rebuild(pairs, pairs.length / 2 - 1);
+        return frequency;
+    }
+
+    /**
+     * drops the postings of the documents documentMap maps to -1 and renumbers the others,
+     * decoding and re-encoding the list once; a list that ends before the first dropped
+     * document is left as it is
+     * @param documentMap new docId of every docId, dropped ones removed and the later ones 
+     * shifted down in the same order
+     * @return total frequency of the dropped postings
+     */
+    public int renumber(int[] documentMap) {
+        if(tailSize == 0 || documentMap[tail[(tailSize - 1) * 2]] == tail[(tailSize - 1) * 2]){
+            return 0;
+        }
+        int[] pairs = toArray();
+        int count = 0;
+        int dropped = 0;
+        for(int i = 0; i < pairs.length / 2; i++){
+            int docId = documentMap[pairs[i * 2]];
+            if(docId < 0){
+                dropped += pairs[i * 2 + 1];
+                continue;
+            }
+            pairs[count * 2] = docId;
+            pairs[count * 2 + 1] = pairs[i * 2 + 1];
+            count++;
+        }
+        rebuild(pairs, count);
+        return dropped;
+    }
+
+    /**
+     *
+     * @param docId
+     * @return the frequency of the term in docId, 0 when absent
+     */
+    public int frequency(int docId) {
+        if(tailSize == 0 || docId > tail[(tailSize - 1) * 2]){
+            return 0;
+        }
+        if(docId >= tail[0]){
+            int index = search(docId);
+            return index >= 0 ? tail[index * 2 + 1] : 0;
+        }
+        Cursor cursor = new Cursor();
+        return cursor.advance(docId) && cursor.docId == docId ? cursor.frequency : 0;
+    }
+
+    /**
+     *
+     * @return number of documents in the list
+     */
+    public int size() {
+        return blockCount * BLOCK_SIZE + tailSize;
+    }
+
+    /**
+     *
+     * @return a cursor positioned before the first posting
+     */
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * Sequential, allocation free walk over the postings in docId order, decoding the
+     * blocks as it goes
+     */
+    public class Cursor {
+        // next block to decode, and postings left in the one being decoded
+        private int block;
+        private int remaining;
+        private int position;
+        private int tailIndex = -1;
+        private int docId;
+        private int frequency;
+
+        public boolean next() {
+            if(remaining > 0){
+                remaining--;
+                docId += readVarint();
+                frequency = readVarint();
+                return true;
+            }
+            if(block < blockCount){
+                position = blockOffsets[block];
+                docId = blockDocIds[block++];
+                frequency = readVarint();
+                remaining = BLOCK_SIZE - 1;
+                return true;
+            }
+            if(tailIndex < tailSize){
+                tailIndex++;
+            }
+            if(tailIndex < tailSize){
+                docId = tail[tailIndex * 2];
+                frequency = tail[tailIndex * 2 + 1];
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * moves to the first posting at or after target, skipping the blocks that end
+         * before it; stays put when already there
+         * @param target
+         * @return false when the list is exhausted
+         */
+        public boolean advance(int target) {
+            if(tailIndex >= tailSize){
+                return false;
+            }
+            if((tailIndex >= 0 || remaining > 0 || block > 0) && docId >= target){
+                return true;
+            }
+            if(tailIndex < 0 && start(block) <= target){
+                // the rest of the current block is behind target
+                remaining = 0;
+                while(start(block + 1) <= target){
+                    block++;
+                }
+                if(block == blockCount){
+                    int index = search(target);
+                    tailIndex = (index >= 0 ? index : -index - 1) - 1;
+                }
+            }
+            while(next()){
+                if(docId >= target){
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        public int docId() {
+            return docId;
+        }
+
+        public int frequency() {
+            return frequency;
+        }
+
+        // *** helper methods
+        /**
+         *
+         * @param block
+         * @return first docId of block, the tail standing as block blockCount
+         */
+        private int start(int block) {
+            if(block < blockCount){
+                return blockDocIds[block];
+            }
+            return block == blockCount && tailSize > 0 ? tail[0] : Integer.MAX_VALUE;
+        }
+
+        private int readVarint() {
+            int value = 0;
+            for(int shift = 0; ; shift += 7){
+                byte b = bytes[position++];
+                value |= (b & 0x7f) << shift;
+                if(b >= 0){
+                    return value;
+                }
+            }
+        }
+    }
+
+    // *** helper methods
+    private void append(int docId, int frequency) {
+        if(tailSize == BLOCK_SIZE){
+            encodeTail();
+        }
+        if(tailSize * 2 == tail.length){
+            tail = Arrays.copyOf(tail, Math.min(tail.length * 2, BLOCK_SIZE * 2));
+        }
+        tail[tailSize * 2] = docId;
+        tail[tailSize * 2 + 1] = frequency;
+        tailSize++;
+    }
+
+    private void encodeTail() {
+        if(blockCount == blockDocIds.length){
+            int capacity = Math.max(4, blockCount * 2);
+            blockDocIds = Arrays.copyOf(blockDocIds, capacity);
+            blockOffsets = Arrays.copyOf(blockOffsets, capacity);
+        }
+        blockDocIds[blockCount] = tail[0];
+        blockOffsets[blockCount] = byteSize;
+        blockCount++;
+        writeVarint(tail[1]);
+        for(int i = 1; i < tailSize; i++){
+            writeVarint(tail[i * 2] - tail[i * 2 - 2]);
+            writeVarint(tail[i * 2 + 1]);
+        }
+        tailSize = 0;
+    }
+
+    private void writeVarint(int value) {
+        if(bytes.length - byteSize < 5){
+            bytes = Arrays.copyOf(bytes, Math.max(64, bytes.length + (bytes.length >> 1)));
+        }
+        while((value & ~0x7f) != 0){
+            bytes[byteSize++] = (byte) ((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        bytes[byteSize++] = (byte) value;
+    }
+
+    private int[] toArray() {
+        int[] pairs = new int[size() * 2];
+        Cursor cursor = new Cursor();
+        for(int i = 0; cursor.next(); i++){
+            pairs[i * 2] = cursor.docId;
+            pairs[i * 2 + 1] = cursor.frequency;
+        }
+        return pairs;
+    }
+
+    private void rebuild(int[] pairs, int count) {
+        bytes = NO_BYTES;
+        byteSize = 0;
+        blockDocIds = EMPTY;
+        blockOffsets = EMPTY;
+        blockCount = 0;
+        tail = new int[INITIAL_CAPACITY * 2];
+        tailSize = 0;
+        for(int i = 0; i < count; i++){
+            append(pairs[i * 2], pairs[i * 2 + 1]);
+        }
+    }
+
+    private int search(int docId) {
+        return search(tail, tailSize, docId);
+    }
+
+    private static int search(int[] pairs, int size, int docId) {
+        int low = 0;
+        int high = size - 1;
+        while(low <= high){
+            int mid = (low + high) >>> 1;
+            int midDoc = pairs[mid * 2];
+            if(midDoc < docId){
+                low = mid + 1;
+            } else if(midDoc > docId){
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+}
@@ -0,0 +1,276 @@
+package eecs4412.project.model;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.stream.Collectors;
+
+/**
+ * Single-pass in-memory indexing (SPIMI) with a memory budget: documents are indexed
+ * into an in-memory block which, once its estimated size reaches the budget, is written
+ * to a temporary run file of postings sorted by term. finish() streams a k-way merge of
+ * the runs into the binary format of MappedInvertedIndex, so the postings of the corpus
+ * are bounded by disk, not heap; only the documents and terms are held in memory.
+ * <pre>
+ * run  documentCount, then (name, size, lastModified) per document
+ *      termCount, then per term in term order: term, documentFrequency, totalFrequency
+ *      and documentFrequency (docId, frequency) int pairs, docIds global to the builder
+ * </pre>
+ */
+public class SpimiIndexBuilder implements Closeable {
+
+    public static final long DEFAULT_MEMORY_BUDGET = 256L << 20;
+
+    // rough heap cost of the parts of an InvertedIndexFile, with array growth slack;
+    // postings are varint compressed to a few bytes each, and each distinct total 
+    // frequency takes two ints in the table of the statistics, kept at most half full
+    private static final long POSTING_BYTES = 4;
+    private static final long TERM_BYTES = 160;
+    private static final long DOCUMENT_BYTES = 100;
+    private static final long TOTAL_FREQUENCY_BYTES = 32;
+
+    private final Path directory;
+    private final boolean ownDirectory;
+    private final long memoryBudget;
+    private final List<Path> runs = new ArrayList<>();
+    private Block block = new Block();
+    private int blockBase;
+
+    /**
+     *
+     * @param temporaryDirectory where the runs are written, created if missing
+     * @param memoryBudget estimated bytes of a block before it is spilled
+     * @throws IOException
+     */
+    public SpimiIndexBuilder(Path temporaryDirectory, long memoryBudget) throws IOException {
+        super();
+        this.ownDirectory = !Files.exists(temporaryDirectory);
+        this.directory = Files.createDirectories(temporaryDirectory);
+        this.memoryBudget = memoryBudget;
+    }
+
+    /**
+     *
+     * @return the in-memory block documents are indexed into; replaced when it is spilled
+     */
+    public InvertedIndexFile getBlock() {
+        return block;
+    }
+
+    /**
+     * call once a document is fully indexed into the block, never in the middle of one
+     * @return true if the block was spilled and getBlock() returns a new one
+     * @throws IOException
+     */
+    public boolean endDocument() throws IOException {
+        if(estimatedSize() < memoryBudget){
+            return false;
+        }
+        spill();
+        return true;
+    }
+
+    /**
+     *
+     * @return number of runs written so far
+     */
+    public int getRunCount() {
+        return runs.size();
+    }
+
+    /**
+     *
+     * @return estimated heap bytes of the current block
+     */
+    public long estimatedSize() {
+        return block.postings * POSTING_BYTES + (long) block.getTermCount() * TERM_BYTES
+                + (long) block.getDocumentCount() * DOCUMENT_BYTES
+                + (long) block.getDistinctTotalFrequencies() * TOTAL_FREQUENCY_BYTES;
+    }
+
+    /**
+     * spill the last block and merge every run into file, in the format of MappedInvertedIndex
+     * @param file
+     * @throws IOException
+     */
+    public void finish(Path file) throws IOException {
+        if(block.getDocumentCount() > 0 || runs.isEmpty()){
+            spill();
+        }
+        List<RunReader> readers = new ArrayList<>(runs.size());
+        Path postingsFile = Files.createTempFile(directory, "spimi-postings", ".bin");
+        try {
+            List<String> documents = new ArrayList<>();
+            long[] documentSizes = new long[0];
+            long[] documentModified = new long[0];
+            for(Path run : runs){
+                RunReader reader = new RunReader(readers.size(), run);
+                readers.add(reader);
+                int count = reader.in.readInt();
+                documentSizes = Arrays.copyOf(documentSizes, documents.size() + count);
+                documentModified = Arrays.copyOf(documentModified, documents.size() + count);
+                for(int i = 0; i < count; i++){
+                    documentSizes[documents.size()] = reader.in.readLong();
+                    documentModified[documents.size()] = reader.in.readLong();
+                    documents.add(reader.in.readUTF());
+                }
+                reader.remainingTerms = reader.in.readInt();
+            }
+
+            List<String> terms = new ArrayList<>();
+            int[] documentFrequencies = new int[1024];
+            int[] totalFrequencies = new int[1024];
+            // equal terms come out in run order, so their postings stay sorted by docId
+            PriorityQueue<RunReader> queue = new PriorityQueue<>(Math.max(1, readers.size()),
+                    Comparator.comparing((RunReader reader) -> reader.term).thenComparingInt(reader -> reader.number));
+            for(RunReader reader : readers){
+                if(reader.nextTerm()){
+                    queue.add(reader);
+                }
+            }
+            try(DataOutputStream postings = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(postingsFile), 1 << 16))){
+                while(!queue.isEmpty()){
+                    String term = queue.peek().term;
+                    int documentFrequency = 0;
+                    int totalFrequency = 0;
+                    while(!queue.isEmpty() && queue.peek().term.equals(term)){
+                        RunReader reader = queue.poll();
+                        documentFrequency += reader.documentFrequency;
+                        totalFrequency += reader.totalFrequency;
+                        reader.copyPostings(postings);
+                        if(reader.nextTerm()){
+                            queue.add(reader);
+                        }
+                    }
+                    if(terms.size() == documentFrequencies.length){
+                        documentFrequencies = Arrays.copyOf(documentFrequencies, terms.size() * 2);
+                        totalFrequencies = Arrays.copyOf(totalFrequencies, terms.size() * 2);
+                    }
+                    documentFrequencies[terms.size()] = documentFrequency;
+                    totalFrequencies[terms.size()] = totalFrequency;
+                    terms.add(term);
+                }
+            }
+            MappedInvertedIndex.write(documents, documentSizes, documentModified, terms,
+                    documentFrequencies, totalFrequencies, postingsFile, file);
+        } finally {
+            for(RunReader reader : readers){
+                reader.in.close();
+            }
+            Files.deleteIfExists(postingsFile);
+        }
+    }
+
+    /**
+     * delete the runs, and the temporary directory if the builder created it
+     */
+    @Override
+    public void close() throws IOException {
+        for(Path run : runs){
+            Files.deleteIfExists(run);
+        }
+        runs.clear();
+        if(ownDirectory){
+            Files.deleteIfExists(directory);
+        }
+    }
+
+    // *** helper methods
+    private void spill() throws IOException {
+        Path run = Files.createTempFile(directory, "spimi-run", ".bin");
+        runs.add(run);
+        List<String> documents = block.getDocuments();
+        List<TermData> terms = block.streamTermData()
+                .sorted(Comparator.comparing(TermData::getTerm))
+                .collect(Collectors.toList());
+        try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(run), 1 << 16))){
+            out.writeInt(documents.size());
+            for(int docId = 0; docId < documents.size(); docId++){
+                out.writeLong(block.getDocumentSize(docId));
+                out.writeLong(block.getDocumentLastModified(docId));
+                out.writeUTF(documents.get(docId));
+            }
+            out.writeInt(terms.size());
+            for(TermData termData : terms){
+                out.writeUTF(termData.getTerm());
+                out.writeInt(termData.getDocumentFrequency());
+                out.writeInt(termData.getTermTotalFrequncy());
+                Postings.Cursor cursor = termData.getPostings().cursor();
+                while(cursor.next()){
+                    out.writeInt(blockBase + cursor.docId());
+                    out.writeInt(cursor.frequency());
+                }
+            }
+        }
+        blockBase += documents.size();
+        block = new Block();
+    }
+
+    /**
+     * InvertedIndexFile that counts its postings, for the size estimate
+     */
+    private static final class Block extends InvertedIndexFile {
+        private long postings;
+
+        @Override
+        public void mapTermToDoc(String term, String document) {
+            super.mapTermToDoc(term, document);
+            if(getTermFrequencyInDocument(term, document) == 1){
+                postings++;
+            }
+        }
+
+        @Override
+        public int mapTermToDoc(char[] buffer, int offset, int length, String document) {
+            int frequency = super.mapTermToDoc(buffer, offset, length, document);
+            if(frequency == 1){
+                postings++;
+            }
+            return frequency;
+        }
+    }
+
+    /**
+     * Sequential reader of the term section of a run
+     */
+    private static final class RunReader {
+        private final int number;
+        private final DataInputStream in;
+        private int remainingTerms;
+        private String term;
+        private int documentFrequency;
+        private int totalFrequency;
+
+        RunReader(int number, Path run) throws IOException {
+            this.number = number;
+            this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(run), 1 << 16));
+        }
+
+        boolean nextTerm() throws IOException {
+            if(remainingTerms == 0){
+                return false;
+            }
+            remainingTerms--;
+            term = in.readUTF();
+            documentFrequency = in.readInt();
+            totalFrequency = in.readInt();
+            return true;
+        }
+
+        void copyPostings(DataOutputStream out) throws IOException {
+            for(int i = 0; i < documentFrequency * 2; i++){
+                out.writeInt(in.readInt());
+            }
+        }
+    }
+}
@@ -1,34 +1,158 @@
 package eecs4412.project.model;
 
 import java.util.Comparator;
-import java.util.HashMap;
-import java.util.Map;
 
 public class TermData implements Comparable<TermData>, Comparator<TermData>{
     private String term;
-    private final Map<String, Integer> frequencyInDocument;
+    private final int termId;
+    private final Dictionary documents;
+    private final Postings postings;
+    private final IndexStatistics statistics;
+    private ForwardIndex forwardIndex;
     private int termTotalFrequncy = 0;
-    
+
     public TermData(String term) {
+        this(term, -1, new Dictionary());
+    }
+
+    /**
+     *
+     * @param term
+     * @param termId id of the term in the owning index
+     * @param documents document dictionary shared by every term of the owning index
+     */
+    public TermData(String term, int termId, Dictionary documents) {
+        this(term, termId, documents, null, null);
+    }
+
+    /**
+     *
+     * @param term
+     * @param termId id of the term in the owning index
+     * @param documents document dictionary shared by every term of the owning index
+     * @param statistics statistics of the owning index, told of every change, or null
+     * @param forwardIndex forward index of the owning index, told of every term counted, or null
+     */
+    TermData(String term, int termId, Dictionary documents, IndexStatistics statistics, ForwardIndex forwardIndex) {
         super();
         this.setTerm(term);
-        this.frequencyInDocument = new HashMap<>();
+        this.termId = termId;
+        this.documents = documents;
+        this.postings = new Postings();
+        this.statistics = statistics;
+        this.forwardIndex = forwardIndex;
+        if(statistics != null){
+            statistics.addTerm();
+        }
+    }
+
+    /**
+     *
+     * @param forwardIndex told of every term counted from now on
+     */
+    void setForwardIndex(ForwardIndex forwardIndex) {
+        this.forwardIndex = forwardIndex;
     }
-    
+
     public int getTermFrequencyInDocument(String document) {
-        return frequencyInDocument.containsKey(document) ? frequencyInDocument.get(document) : 0;
+        int docId = documents.lookup(document);
+        return docId < 0 ? 0 : postings.frequency(docId);
+    }
+
+    public int getTermFrequencyInDocument(int docId) {
+        return postings.frequency(docId);
     }
 
     public void addTermFrequencyInDocument(String document) {
-        termTotalFrequncy++;
-        int docFreq = frequencyInDocument.containsKey(document) ? frequencyInDocument.get(document)+1 : 1;
-        frequencyInDocument.put(document, docFreq);
+        addTermFrequencyInDocument(documents.intern(document));
+    }
+
+    /**
+     *
+     * @param docId
+     * @return the new frequency of the term in docId
+     */
+    public int addTermFrequencyInDocument(int docId) {
+        return addTermFrequencyInDocument(docId, 1);
+    }
+
+    /**
+     *
+     * @param docId
+     * @param frequency occurrences of the term to add for docId
+     * @return the new frequency of the term in docId
+     */
+    public int addTermFrequencyInDocument(int docId, int frequency) {
+        int documentFrequency = postings.size();
+        termTotalFrequncy += frequency;
+        int newFrequency = postings.add(docId, frequency);
+        if(statistics != null){
+            statistics.changeTerm(documentFrequency, postings.size(), termTotalFrequncy - frequency, termTotalFrequncy);
+            statistics.countInDocument(docId, newFrequency);
+        }
+        if(forwardIndex != null){
+            forwardIndex.count(docId, termId, frequency, newFrequency);
+        }
+        return newFrequency;
+    }
+
+    /**
+     * 
+     * @param docId
+     * @return the frequency the term had in docId
+     */
+    public int removeDocument(int docId) {
+        int documentFrequency = postings.size();
+        int frequency = postings.remove(docId);
+        termTotalFrequncy -= frequency;
+        if(statistics != null && frequency > 0){
+            statistics.changeTerm(documentFrequency, postings.size(), termTotalFrequncy + frequency, termTotalFrequncy);
+        }
+        return frequency;
+    }
+
+    /**
+     * drops the postings of the documents documentMap maps to -1 and renumbers the others
+     * @param documentMap new docId of every docId, see Postings.renumber
+     * @return total frequency of the dropped postings
+     */
+    int renumberDocuments(int[] documentMap) {
+        int documentFrequency = postings.size();
+        int frequency = postings.renumber(documentMap);
+        termTotalFrequncy -= frequency;
+        if(statistics != null && frequency > 0){
+            statistics.changeTerm(documentFrequency, postings.size(), termTotalFrequncy + frequency, termTotalFrequncy);
+        }
+        return frequency;
+    }
+
+    /**
+     * Adds the postings of another TermData of the same term to this one
+     * @param other
+     */
+    public void merge(TermData other) {
+        Postings.Cursor cursor = other.postings.cursor();
+        while(cursor.next()){
+            addTermFrequencyInDocument(documents.intern(other.documents.get(cursor.docId())), cursor.frequency());
+        }
+    }
+
+    /**
+     * Adds the postings of another TermData of the same term to this one
+     * @param other
+     * @param documentMap maps the document ids of other to the document ids of this term
+     */
+    public void merge(TermData other, int[] documentMap) {
+        Postings.Cursor cursor = other.postings.cursor();
+        while(cursor.next()){
+            addTermFrequencyInDocument(documentMap[cursor.docId()], cursor.frequency());
+        }
     }
 
     public int getDocumentFrequency() {
-        return frequencyInDocument.size();
+        return postings.size();
     }
-    
+
     public int getTermTotalFrequncy() {
         return termTotalFrequncy;
     }
@@ -41,6 +165,14 @@ public class TermData implements Comparable<TermData>, Comparator<TermData>{
         this.term = term;
     }
 
+    public int getTermId() {
+        return termId;
+    }
+
+    public Postings getPostings() {
+        return postings;
+    }
+
     @Override
     public int compare(TermData o1, TermData o2) {
         return o1.term.compareToIgnoreCase(o2.term);
@@ -0,0 +1,266 @@
+package eecs4412.project.model;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * What the test phase needs from training: the selected attributes in column order,
+ * their training IDF, the weighting scheme and the corpus figures it normalises tf by,
+ * and the max weight of a training cell that quantized ARFF cells are levels of.
+ * Training and test rows are both weighted through it, test emails directly, without
+ * building an index of the test set.
+ */
+public class VocabularyModel {
+
+    public static final int MAGIC = 0x45564f43; // EVOC
+    public static final int VERSION = 3;
+
+    private final String[] terms;
+    private final double[] idf;
+    private final double maxTermFrequency;
+    private final int documentCount;
+    private final WeightingScheme weightingScheme;
+    private final double averageLength;
+    private final double maxWeight;
+    private final Dictionary columns;
+
+    public VocabularyModel(String[] terms, double[] idf, double maxTermFrequency, int documentCount) {
+        this(terms, idf, maxTermFrequency, documentCount, WeightingScheme.TF_IDF, 0d);
+    }
+
+    /**
+     *
+     * @param terms attributes in column order
+     * @param idf idf of each column
+     * @param maxTermFrequency max total frequency of a term in training
+     * @param documentCount
+     * @param weightingScheme
+     * @param averageLength average sum of attribute frequencies of a training document
+     */
+    public VocabularyModel(String[] terms, double[] idf, double maxTermFrequency, int documentCount,
+            WeightingScheme weightingScheme, double averageLength) {
+        this(terms, idf, maxTermFrequency, documentCount, weightingScheme, averageLength, 0d);
+    }
+
+    /**
+     *
+     * @param terms attributes in column order
+     * @param idf idf of each column
+     * @param maxTermFrequency max total frequency of a term in training
+     * @param documentCount
+     * @param weightingScheme
+     * @param averageLength average sum of attribute frequencies of a training document
+     * @param maxWeight max weight of a training cell, 0 when not measured
+     */
+    public VocabularyModel(String[] terms, double[] idf, double maxTermFrequency, int documentCount,
+            WeightingScheme weightingScheme, double averageLength, double maxWeight) {
+        super();
+        this.terms = terms;
+        this.idf = idf;
+        this.maxTermFrequency = maxTermFrequency;
+        this.documentCount = documentCount;
+        this.weightingScheme = weightingScheme;
+        this.averageLength = averageLength;
+        this.maxWeight = maxWeight;
+        this.columns = new Dictionary(terms.length);
+        for(String term : terms){
+            columns.intern(term);
+        }
+    }
+
+    /**
+     * build the model of a (trimmed) training index
+     * @param index
+     * @param selectedAttributes in column order
+     * @return
+     */
+    public static VocabularyModel build(InvertedIndexFile index, Collection<String> selectedAttributes) {
+        return build(index, selectedAttributes, WeightingScheme.TF_IDF);
+    }
+
+    /**
+     * build the model of a (trimmed) training index, computing the IDF table once
+     * @param index
+     * @param selectedAttributes in column order
+     * @param weightingScheme
+     * @return
+     */
+    public static VocabularyModel build(InvertedIndexFile index, Collection<String> selectedAttributes,
+            WeightingScheme weightingScheme) {
+        String[] terms = selectedAttributes.toArray(new String[0]);
+        double[] idf = new double[terms.length];
+        double documentCount = index.getDocumentCount();
+        long attributeFrequencies = 0;
+        for(int column = 0; column < terms.length; column++){
+            idf[column] = Math.log(documentCount / (double) index.getDocumentFrequency(terms[column]));
+            attributeFrequencies += index.getTermTotalFrequncy(terms[column]);
+        }
+        return new VocabularyModel(terms, idf, index.getMaxTermFrequency(), index.getDocumentCount(),
+                weightingScheme, documentCount > 0 ? attributeFrequencies / documentCount : 0d);
+    }
+
+    /**
+     * build the model of the given terms of a mapped index, without loading their postings
+     * @param index
+     * @param termIndexes the selected attributes, in column order
+     * @param weightingScheme
+     * @return
+     */
+    public static VocabularyModel build(MappedInvertedIndex index, int[] termIndexes, WeightingScheme weightingScheme) {
+        String[] terms = new String[termIndexes.length];
+        double[] idf = new double[terms.length];
+        double documentCount = index.getDocumentCount();
+        long attributeFrequencies = 0;
+        int maxTermFrequency = -1;
+        for(int column = 0; column < terms.length; column++){
+            terms[column] = index.getTerm(termIndexes[column]);
+            idf[column] = Math.log(documentCount / (double) index.getDocumentFrequency(termIndexes[column]));
+            int totalFrequency = index.getTermTotalFrequncy(termIndexes[column]);
+            attributeFrequencies += totalFrequency;
+            maxTermFrequency = Math.max(maxTermFrequency, totalFrequency);
+        }
+        return new VocabularyModel(terms, idf, maxTermFrequency, index.getDocumentCount(),
+                weightingScheme, documentCount > 0 ? attributeFrequencies / documentCount : 0d);
+    }
+
+    /**
+     *
+     * @param file
+     * @return
+     * @throws IOException
+     */
+    public static VocabularyModel load(Path file) throws IOException {
+        try(DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))){
+            int version = in.readInt() == MAGIC ? in.readInt() : -1;
+            if(version < 1 || version > VERSION){
+                throw new IOException("not a vocabulary model file");
+            }
+            double maxTermFrequency = in.readDouble();
+            int documentCount = in.readInt();
+            // version 1 models were always tf-idf weighted
+            WeightingScheme weightingScheme = version == 1 ? WeightingScheme.TF_IDF : WeightingScheme.forName(in.readUTF());
+            double averageLength = version == 1 ? 0d : in.readDouble();
+            double maxWeight = version < 3 ? 0d : in.readDouble();
+            String[] terms = new String[in.readInt()];
+            double[] idf = new double[terms.length];
+            for(int column = 0; column < terms.length; column++){
+                terms[column] = in.readUTF();
+                idf[column] = in.readDouble();
+            }
+            return new VocabularyModel(terms, idf, maxTermFrequency, documentCount, weightingScheme,
+                    averageLength, maxWeight);
+        }
+    }
+
+    /**
+     *
+     * @param file
+     * @throws IOException
+     */
+    public void save(Path file) throws IOException {
+        try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))){
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeDouble(maxTermFrequency);
+            out.writeInt(documentCount);
+            out.writeUTF(weightingScheme.getName());
+            out.writeDouble(averageLength);
+            out.writeDouble(maxWeight);
+            out.writeInt(terms.length);
+            for(int column = 0; column < terms.length; column++){
+                out.writeUTF(terms[column]);
+                out.writeDouble(idf[column]);
+            }
+        }
+    }
+
+    /**
+     *
+     * @param buffer
+     * @param offset
+     * @param length
+     * @return the column of the term in buffer[offset, offset + length), -1 if it is not an attribute
+     */
+    public int lookup(char[] buffer, int offset, int length) {
+        return columns.lookup(buffer, offset, length);
+    }
+
+    /**
+     *
+     * @param term
+     * @return the column of term, -1 if it is not an attribute
+     */
+    public int lookup(String term) {
+        return columns.lookup(term);
+    }
+
+    /**
+     * sets the cells of a row's attributes with the weighting scheme, leaving the others
+     * @param columns columns of the attributes found in the row, each once, in increasing order
+     * @param frequencies frequency of each of them, all above 0
+     * @param count number of attributes found
+     * @param row
+     */
+    public void weigh(int[] columns, int[] frequencies, int count, double[] row) {
+        weightingScheme.weigh(columns, frequencies, count, idf, maxTermFrequency, averageLength, row);
+    }
+
+    /**
+     *
+     * @param maxWeight max weight of a training cell
+     * @return the same model recording maxWeight
+     */
+    public VocabularyModel withMaxWeight(double maxWeight) {
+        return new VocabularyModel(terms, idf, maxTermFrequency, documentCount, weightingScheme,
+                averageLength, maxWeight);
+    }
+
+    /**
+     *
+     * @return attribute names in column order
+     */
+    public List<String> getTerms() {
+        return Collections.unmodifiableList(Arrays.asList(terms));
+    }
+
+    public int size() {
+        return terms.length;
+    }
+
+    public double getIdf(int column) {
+        return idf[column];
+    }
+
+    public double getMaxTermFrequency() {
+        return maxTermFrequency;
+    }
+
+    public int getDocumentCount() {
+        return documentCount;
+    }
+
+    public WeightingScheme getWeightingScheme() {
+        return weightingScheme;
+    }
+
+    public double getAverageLength() {
+        return averageLength;
+    }
+
+    /**
+     *
+     * @return max weight of a training cell, 0 when the model was built without measuring it
+     */
+    public double getMaxWeight() {
+        return maxWeight;
+    }
+}
@@ -0,0 +1,120 @@
+package eecs4412.project.model;
+
+/**
+ * How the cells of a row are weighted from the frequencies of its terms and the IDF table
+ * of a VocabularyModel. Each scheme weighs a whole row in its own loop over primitive
+ * arrays, with nothing but arithmetic inside, so they all run at the speed of TF_IDF.
+ */
+public enum WeightingScheme {
+
+    /** frequency over the max total frequency of a term in training, times idf */
+    TF_IDF("tfidf") {
+        @Override
+        public void weigh(int[] columns, int[] frequencies, int count, double[] idf,
+                double maxTermFrequency, double averageLength, double[] row) {
+            for(int i = 0; i < count; i++){
+                row[columns[i]] = frequencies[i] / maxTermFrequency * idf[columns[i]];
+            }
+        }
+    },
+    /** raw frequency times idf */
+    RAW_TF_IDF("raw") {
+        @Override
+        public void weigh(int[] columns, int[] frequencies, int count, double[] idf,
+                double maxTermFrequency, double averageLength, double[] row) {
+            for(int i = 0; i < count; i++){
+                row[columns[i]] = frequencies[i] * idf[columns[i]];
+            }
+        }
+    },
+    /** 1 + log of the frequency, times idf */
+    LOG_TF_IDF("log") {
+        @Override
+        public void weigh(int[] columns, int[] frequencies, int count, double[] idf,
+                double maxTermFrequency, double averageLength, double[] row) {
+            for(int i = 0; i < count; i++){
+                row[columns[i]] = (1d + Math.log(frequencies[i])) * idf[columns[i]];
+            }
+        }
+    },
+    /**
+     * BM25 saturation of the frequency, times idf; the length of a row is the sum of its
+     * attribute frequencies, so training and test rows are measured alike
+     */
+    BM25("bm25") {
+        @Override
+        public void weigh(int[] columns, int[] frequencies, int count, double[] idf,
+                double maxTermFrequency, double averageLength, double[] row) {
+            long length = 0;
+            for(int i = 0; i < count; i++){
+                length += frequencies[i];
+            }
+            double norm = BM25_K1 * (1d - BM25_B + (averageLength > 0 ? BM25_B * length / averageLength : 0d));
+            for(int i = 0; i < count; i++){
+                row[columns[i]] = frequencies[i] * (BM25_K1 + 1d) / (frequencies[i] + norm) * idf[columns[i]];
+            }
+        }
+    },
+    /** TF_IDF scaled to a row of unit euclidean length */
+    TF_IDF_L2("l2") {
+        @Override
+        public void weigh(int[] columns, int[] frequencies, int count, double[] idf,
+                double maxTermFrequency, double averageLength, double[] row) {
+            TF_IDF.weigh(columns, frequencies, count, idf, maxTermFrequency, averageLength, row);
+            double squares = 0d;
+            for(int i = 0; i < count; i++){
+                squares += row[columns[i]] * row[columns[i]];
+            }
+            if(squares > 0d){
+                double scale = 1d / Math.sqrt(squares);
+                for(int i = 0; i < count; i++){
+                    row[columns[i]] *= scale;
+                }
+            }
+        }
+    };
+
+    private static final double BM25_K1 = 1.2;
+    private static final double BM25_B = 0.75;
+
+    private final String name;
+
+    private WeightingScheme(String name) {
+        this.name = name;
+    }
+
+    /**
+     * sets the cells of the row's terms, leaving every other cell as it is
+     * @param columns columns of the terms of the row, each once, in increasing order
+     * @param frequencies frequency of each term, all above 0
+     * @param count number of terms
+     * @param idf idf of each column
+     * @param maxTermFrequency max total frequency of a term in training
+     * @param averageLength average sum of attribute frequencies of a training row
+     * @param row
+     */
+    public abstract void weigh(int[] columns, int[] frequencies, int count, double[] idf,
+            double maxTermFrequency, double averageLength, double[] row);
+
+    /**
+     *
+     * @return name of the scheme on the command line
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     *
+     * @param name tfidf, raw, log, bm25 or l2
+     * @return
+     */
+    public static WeightingScheme forName(String name) {
+        for(WeightingScheme scheme : values()){
+            if(scheme.name.equalsIgnoreCase(name)){
+                return scheme;
+            }
+        }
+        throw new IllegalArgumentException("unknown weighting scheme " + name);
+    }
+}
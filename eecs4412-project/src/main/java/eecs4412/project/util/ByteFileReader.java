@@ -0,0 +1,70 @@
+package eecs4412.project.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+
+/**
+ * Reads files as raw bytes, without decoding them into chars or lines. Files are read
+ * through one reused direct buffer; files larger than MAP_THRESHOLD are memory mapped
+ * instead. Either way the content is handed over in chunks, so no file is ever held in
+ * memory as a whole. Not thread-safe, use one instance per thread.
+ */
+public class ByteFileReader {
+
+    public static final int BUFFER_SIZE = 1 << 16;
+    public static final long MAP_THRESHOLD = 1 << 22;
+    private static final long MAP_CHUNK_SIZE = 1 << 26;
+
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final PipelineMetrics metrics;
+
+    public ByteFileReader() {
+        this(PipelineMetrics.DISABLED);
+    }
+
+    /**
+     *
+     * @param metrics counts files and bytes, and times the reads without the chunk consumer
+     */
+    public ByteFileReader(PipelineMetrics metrics) {
+        super();
+        this.metrics = metrics;
+    }
+
+    /**
+     * hand the content of file to chunkConsumer, one chunk at a time and in order;
+     * a chunk is only valid for the duration of the call
+     * @param file
+     * @param chunkConsumer
+     * @throws IOException
+     */
+    public void read(Path file, Consumer<ByteBuffer> chunkConsumer) throws IOException {
+        long start = metrics.now();
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)){
+            long size = channel.size();
+            metrics.addFile(size);
+            if(size > MAP_THRESHOLD){
+                for(long position = 0; position < size; position += MAP_CHUNK_SIZE){
+                    ByteBuffer chunk = channel.map(FileChannel.MapMode.READ_ONLY, position,
+                            Math.min(MAP_CHUNK_SIZE, size - position));
+                    metrics.record(PipelineMetrics.Stage.READ, start);
+                    chunkConsumer.accept(chunk);
+                    start = metrics.now();
+                }
+                return;
+            }
+            buffer.clear();
+            while(channel.read(buffer) >= 0){
+                metrics.record(PipelineMetrics.Stage.READ, start);
+                buffer.flip();
+                chunkConsumer.accept(buffer);
+                buffer.clear();
+                start = metrics.now();
+            }
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package eecs4412.project.util;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+
+/**
+ * Deterministic synthetic mailbox: ham/spam named emails with headers, a body of
+ * Zipf distributed words, log-normal lengths and, now and then, a base64 attachment.
+ * Spam and ham draw part of their words from their own topic lists, so the classes can
+ * be told apart. Every email depends only on the seed and its number, so a corpus can
+ * be generated in any order and regenerated identically.
+ */
+public class CorpusGenerator {
+
+    public static final long DEFAULT_SEED = 4412;
+    public static final int DEFAULT_VOCABULARY_SIZE = 50000;
+
+    private static final String[] ONSETS = {"b", "c", "d", "f", "g", "h", "j", "k", "l", "m", "n", "p",
+            "r", "s", "t", "v", "w", "br", "cl", "dr", "fr", "gr", "pl", "pr", "sh", "st", "th", "tr"};
+    private static final String[] VOWELS = {"a", "e", "i", "o", "u", "ai", "ea", "ee", "io", "ou"};
+    private static final String[] CODAS = {"", "", "n", "r", "s", "t", "l", "m", "nd", "ng", "st", "ck"};
+    private static final String[] SUFFIXES = {"", "", "", "s", "ed", "ing", "ly", "er", "ness", "ation"};
+    private static final String BASE64 = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+    private static final int TOPIC_SIZE = 300;
+    private static final double TOPIC_RATE = 0.08;
+    private static final double SPAM_RATE = 0.35;
+    private static final double ATTACHMENT_RATE = 0.1;
+    private static final double MEDIAN_WORDS = 180;
+
+    private final long seed;
+    private final String[] vocabulary;
+    private final double[] cumulative;
+
+    public CorpusGenerator() {
+        this(DEFAULT_SEED, DEFAULT_VOCABULARY_SIZE);
+    }
+
+    /**
+     *
+     * @param seed
+     * @param vocabularySize number of distinct words, ranked by Zipf frequency, at least 1000
+     */
+    public CorpusGenerator(long seed, int vocabularySize) {
+        super();
+        if(vocabularySize < 1000){
+            throw new IllegalArgumentException("vocabulary size must be at least 1000");
+        }
+        this.seed = seed;
+        Random random = new Random(seed);
+        this.vocabulary = new String[vocabularySize];
+        for(int rank = 0; rank < vocabularySize; rank++){
+            vocabulary[rank] = word(random);
+        }
+        this.cumulative = new double[vocabularySize];
+        double sum = 0;
+        for(int rank = 0; rank < vocabularySize; rank++){
+            sum += 1d / (rank + 1);
+            cumulative[rank] = sum;
+        }
+        for(int rank = 0; rank < vocabularySize; rank++){
+            cumulative[rank] /= sum;
+        }
+    }
+
+    /**
+     *
+     * @param email number of the email
+     * @return
+     */
+    public boolean isSpam(long email) {
+        return random(email).nextDouble() < SPAM_RATE;
+    }
+
+    /**
+     *
+     * @param email number of the email
+     * @return file name of the email, hamNNNNNNNN.txt or spamNNNNNNNN.txt
+     */
+    public String name(long email) {
+        return String.format("%s%08d.txt", isSpam(email) ? "spam" : "ham", email);
+    }
+
+    /**
+     * writes the text of an email
+     * @param email number of the email
+     * @param out
+     * @throws IOException
+     */
+    public void write(long email, Appendable out) throws IOException {
+        Random random = random(email);
+        boolean spam = random.nextDouble() < SPAM_RATE;
+        // the topic words of each class are a block of mid ranks, clear of the stop-word like head
+        int topic = spam ? vocabulary.length / 4 : vocabulary.length / 4 + TOPIC_SIZE;
+        out.append("From: ").append(vocabulary[random.nextInt(vocabulary.length)])
+            .append('@').append(vocabulary[random.nextInt(1000)]).append(".com\n");
+        out.append("To: ").append(vocabulary[random.nextInt(vocabulary.length)]).append("@example.org\n");
+        out.append("Date: ").append(Long.toString(1100000000L + random.nextInt(400000000))).append('\n');
+        out.append("Message-ID: <").append(Long.toHexString(random.nextLong())).append("@mail>\n");
+        out.append("Subject: ");
+        for(int w = 0, words = 2 + random.nextInt(6); w < words; w++){
+            out.append(vocabulary[topicOrZipf(random, topic)]).append(' ');
+        }
+        out.append("\n\n");
+        int words = (int) Math.max(5, Math.exp(Math.log(MEDIAN_WORDS) + random.nextGaussian()));
+        for(int w = 1; w <= words; w++){
+            out.append(vocabulary[topicOrZipf(random, topic)]).append(SUFFIXES[random.nextInt(SUFFIXES.length)]);
+            out.append(w % 14 == 0 ? ".\n" : random.nextInt(10) == 0 ? ", " : " ");
+        }
+        out.append('\n');
+        if(random.nextDouble() < ATTACHMENT_RATE){
+            out.append("\n--boundary\nContent-Transfer-Encoding: base64\n\n");
+            for(int line = 0, lines = 1 + random.nextInt(40); line < lines; line++){
+                for(int c = 0; c < 76; c++){
+                    out.append(BASE64.charAt(random.nextInt(BASE64.length())));
+                }
+                out.append('\n');
+            }
+            out.append("--boundary--\n");
+        }
+    }
+
+    /**
+     * writes emails [first, first + count) as files of directory
+     * @param directory created if missing
+     * @param first
+     * @param count
+     * @throws IOException
+     */
+    public void generate(Path directory, long first, long count) throws IOException {
+        Files.createDirectories(directory);
+        StringBuilder text = new StringBuilder(4096);
+        for(long email = first; email < first + count; email++){
+            text.setLength(0);
+            write(email, text);
+            try(BufferedWriter out = Files.newBufferedWriter(directory.resolve(name(email)), StandardCharsets.ISO_8859_1)){
+                out.append(text);
+            }
+        }
+    }
+
+    /**
+     * CorpusGenerator directory count [first [seed]]
+     * @param args
+     * @throws IOException
+     */
+    public static void main(String[] args) throws IOException {
+        if(args.length < 2){
+            System.err.println("usage: CorpusGenerator directory count [first [seed]]");
+            System.exit(1);
+        }
+        long first = args.length > 2 ? Long.parseLong(args[2]) : 0;
+        long seed = args.length > 3 ? Long.parseLong(args[3]) : DEFAULT_SEED;
+        new CorpusGenerator(seed, DEFAULT_VOCABULARY_SIZE).generate(Paths.get(args[0]), first, Long.parseLong(args[1]));
+    }
+
+    // *** helper methods
+    private Random random(long email) {
+        long mixed = (seed ^ email * 0x9E3779B97F4A7C15L) * 0xBF58476D1CE4E5B9L;
+        return new Random(mixed ^ (mixed >>> 31));
+    }
+
+    private int topicOrZipf(Random random, int topic) {
+        if(random.nextDouble() < TOPIC_RATE){
+            return topic + random.nextInt(TOPIC_SIZE);
+        }
+        double p = random.nextDouble();
+        int low = 0;
+        int high = cumulative.length - 1;
+        while(low < high){
+            int mid = (low + high) >>> 1;
+            if(cumulative[mid] < p){
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static String word(Random random) {
+        StringBuilder word = new StringBuilder();
+        for(int syllable = 0, syllables = 1 + random.nextInt(3); syllable < syllables; syllable++){
+            word.append(ONSETS[random.nextInt(ONSETS.length)])
+                .append(VOWELS[random.nextInt(VOWELS.length)])
+                .append(CODAS[random.nextInt(CODAS.length)]);
+        }
+        return word.toString();
+    }
+}
@@ -0,0 +1,118 @@
+package eecs4412.project.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.function.ObjIntConsumer;
+
+import eecs4412.project.model.ClassificationReport;
+import eecs4412.project.model.NaiveBayesClassifier;
+
+/**
+ * Scores raw emails with a NaiveBayesClassifier as they are tokenized: every stem found
+ * in the vocabulary adds its log likelihoods to the running class scores, nothing is
+ * counted or allocated per email. Not thread-safe, use one instance per thread.
+ */
+public class EmailClassifier {
+
+    private final NaiveBayesClassifier classifier;
+    private final Tokenizer tokenizer;
+    private final ByteFileReader reader;
+    private final Tokenizer.TermConsumer scorer;
+    private double hamScore;
+    private double spamScore;
+
+    /**
+     *
+     * @param classifier
+     * @param tokenizer used by this instance only
+     */
+    public EmailClassifier(NaiveBayesClassifier classifier, Tokenizer tokenizer) {
+        super();
+        this.classifier = classifier;
+        this.tokenizer = tokenizer;
+        this.reader = new ByteFileReader(tokenizer.getMetrics());
+        this.scorer = (buffer, offset, length) -> {
+            int term = classifier.lookup(buffer, offset, length);
+            if(term >= 0){
+                hamScore += classifier.getLogLikelihood(term, NaiveBayesClassifier.HAM);
+                spamScore += classifier.getLogLikelihood(term, NaiveBayesClassifier.SPAM);
+            }
+        };
+    }
+
+    /**
+     *
+     * @param file raw email
+     * @return HAM or SPAM
+     * @throws IOException
+     */
+    public int classify(Path file) throws IOException {
+        reset();
+        reader.read(file, bytes -> tokenizer.tokenize(bytes, scorer));
+        tokenizer.flush(scorer);
+        return predicted();
+    }
+
+    /**
+     *
+     * @param email whole email as ISO-8859-1 bytes, consumed up to its limit
+     * @return HAM or SPAM
+     */
+    public int classify(ByteBuffer email) {
+        reset();
+        tokenizer.tokenize(email, scorer);
+        tokenizer.flush(scorer);
+        return predicted();
+    }
+
+    /**
+     *
+     * @param email whole email
+     * @return HAM or SPAM
+     */
+    public int classify(CharSequence email) {
+        reset();
+        tokenizer.tokenize(email, scorer);
+        return predicted();
+    }
+
+    /**
+     * classify every file, comparing the prediction with the label of its name
+     * @param files
+     * @param predictionConsumer receives each file with its predicted class, may be null
+     * @return
+     * @throws IOException
+     */
+    public ClassificationReport classifyAll(Iterable<Path> files, ObjIntConsumer<Path> predictionConsumer) throws IOException {
+        ClassificationReport report = new ClassificationReport();
+        for(Path file : files){
+            long start = System.nanoTime();
+            int predicted = classify(file);
+            report.addElapsedNanos(System.nanoTime() - start);
+            report.add(NaiveBayesClassifier.classOf(file.getFileName().toString()), predicted);
+            if(predictionConsumer != null){
+                predictionConsumer.accept(file, predicted);
+            }
+        }
+        return report;
+    }
+
+    /**
+     *
+     * @return log P(spam | last email) - log P(ham | last email), up to the shared evidence term
+     */
+    public double getLogOdds() {
+        return spamScore - hamScore;
+    }
+
+    // *** helper methods
+    private void reset() {
+        hamScore = classifier.getLogPrior(NaiveBayesClassifier.HAM);
+        spamScore = classifier.getLogPrior(NaiveBayesClassifier.SPAM);
+    }
+
+    private int predicted() {
+        return spamScore > hamScore ? NaiveBayesClassifier.SPAM : NaiveBayesClassifier.HAM;
+    }
+}
@@ -0,0 +1,352 @@
+package eecs4412.project.util;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Counters and per-stage latency histograms of a pipeline run, safe to update from
+ * every ingestion thread. Histograms have one bucket per power of two nanoseconds, so
+ * percentiles are upper bounds within a factor of two.
+ * The DISABLED instance ignores every update; stage timing costs a few System.nanoTime
+ * calls per token, which is why it is opt-in.
+ */
+public class PipelineMetrics implements PipelineMetricsMBean {
+
+    public static final PipelineMetrics DISABLED = new PipelineMetrics(false);
+    public static final String OBJECT_NAME = "eecs4412.project:type=PipelineMetrics";
+
+    /**
+     * Pipeline stages; the stages of a token (STEM, STOP_WORDS, INDEX) are not part of TOKENIZE
+     */
+    public enum Stage {
+        /** reading file bytes */
+        READ,
+        /** splitting and lower-casing, per chunk of bytes */
+        TOKENIZE,
+        /** PorterStemmer or stem cache, per token */
+        STEM,
+        /** stop-word lookup, per token */
+        STOP_WORDS,
+        /** the term consumer, per term: mapTermToDoc, or the vocabulary lookup of the test phase */
+        INDEX,
+        /** wordSelector/trimIndex */
+        SELECT,
+        /** tf-idf weights of a row */
+        ARFF,
+        /** writing a row, or an index dump */
+        WRITE,
+        /** writing a chunk of rows formatted in parallel, their formatting is WRITE per row */
+        WRITE_CHUNK
+    }
+
+    private static final int BUCKETS = 64;
+
+    private final boolean enabled;
+    private final long start = System.nanoTime();
+    private final LongAdder files = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private final LongAdder tokens = new LongAdder();
+    private final LongAdder postings = new LongAdder();
+    private final LongAdder rows = new LongAdder();
+    private final AtomicLong uniqueTerms = new AtomicLong();
+    private final LongAdder[] stageCounts = adders(Stage.values().length);
+    private final LongAdder[] stageNanos = adders(Stage.values().length);
+    private final LongAdder[] histograms = adders(Stage.values().length * BUCKETS);
+    private final AtomicLong[] stageMax = new AtomicLong[Stage.values().length];
+
+    public PipelineMetrics() {
+        this(true);
+    }
+
+    private PipelineMetrics(boolean enabled) {
+        super();
+        this.enabled = enabled;
+        for(int stage = 0; stage < stageMax.length; stage++){
+            stageMax[stage] = new AtomicLong();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     *
+     * @return System.nanoTime(), 0 when disabled
+     */
+    public long now() {
+        return enabled ? System.nanoTime() : 0L;
+    }
+
+    /**
+     * records one sample of stage that started at startNanos
+     * @param stage
+     * @param startNanos a value of now()
+     * @return now(), the start of the next stage
+     */
+    public long record(Stage stage, long startNanos) {
+        if(!enabled){
+            return 0L;
+        }
+        long end = System.nanoTime();
+        recordNanos(stage, end - startNanos);
+        return end;
+    }
+
+    /**
+     * records one sample of stage
+     * @param stage
+     * @param nanos
+     */
+    public void recordNanos(Stage stage, long nanos) {
+        if(!enabled){
+            return;
+        }
+        nanos = Math.max(0L, nanos);
+        int index = stage.ordinal();
+        stageCounts[index].increment();
+        stageNanos[index].add(nanos);
+        histograms[index * BUCKETS + bucket(nanos)].increment();
+        stageMax[index].accumulateAndGet(nanos, Math::max);
+    }
+
+    public void addFile(long size) {
+        if(enabled){
+            files.increment();
+            bytes.add(size);
+        }
+    }
+
+    public void addToken() {
+        if(enabled){
+            tokens.increment();
+        }
+    }
+
+    public void addPosting() {
+        if(enabled){
+            postings.increment();
+        }
+    }
+
+    public void addRow() {
+        if(enabled){
+            rows.increment();
+        }
+    }
+
+    public void setUniqueTerms(long terms) {
+        if(enabled){
+            uniqueTerms.set(terms);
+        }
+    }
+
+    /**
+     * registers this instance with the platform MBean server, replacing a previous one
+     * @throws JMException
+     */
+    public void register() throws JMException {
+        ObjectName name = new ObjectName(OBJECT_NAME);
+        if(ManagementFactory.getPlatformMBeanServer().isRegistered(name)){
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+        }
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+    }
+
+    /**
+     *
+     * @param file
+     * @throws IOException
+     */
+    public void writeJson(Path file) throws IOException {
+        Files.write(file, getJson().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     *
+     * @param stage
+     * @param quantile in [0, 1]
+     * @return upper bound of the quantile latency, in nanoseconds
+     */
+    public long getPercentileNanos(Stage stage, double quantile) {
+        long count = stageCounts[stage.ordinal()].sum();
+        if(count == 0){
+            return 0L;
+        }
+        long rank = (long) Math.ceil(quantile * count);
+        long seen = 0;
+        for(int bucket = 0; bucket < BUCKETS; bucket++){
+            seen += histograms[stage.ordinal() * BUCKETS + bucket].sum();
+            if(seen >= Math.max(1, rank)){
+                return Math.min(upperBound(bucket), stageMax[stage.ordinal()].get());
+            }
+        }
+        return stageMax[stage.ordinal()].get();
+    }
+
+    public long getStageCount(Stage stage) {
+        return stageCounts[stage.ordinal()].sum();
+    }
+
+    public long getStageNanos(Stage stage) {
+        return stageNanos[stage.ordinal()].sum();
+    }
+
+    @Override
+    public long getFiles() {
+        return files.sum();
+    }
+
+    @Override
+    public long getBytes() {
+        return bytes.sum();
+    }
+
+    @Override
+    public long getTokens() {
+        return tokens.sum();
+    }
+
+    @Override
+    public long getPostings() {
+        return postings.sum();
+    }
+
+    @Override
+    public long getRows() {
+        return rows.sum();
+    }
+
+    @Override
+    public long getUniqueTerms() {
+        return uniqueTerms.get();
+    }
+
+    @Override
+    public long getElapsedMillis() {
+        return (System.nanoTime() - start) / 1000000L;
+    }
+
+    @Override
+    public double getFilesPerSecond() {
+        return perSecond(getFiles());
+    }
+
+    @Override
+    public double getTokensPerSecond() {
+        return perSecond(getTokens());
+    }
+
+    @Override
+    public String[] getStages() {
+        String[] names = new String[Stage.values().length];
+        for(Stage stage : Stage.values()){
+            names[stage.ordinal()] = name(stage);
+        }
+        return names;
+    }
+
+    @Override
+    public long[] getStageCounts() {
+        long[] counts = new long[Stage.values().length];
+        for(Stage stage : Stage.values()){
+            counts[stage.ordinal()] = getStageCount(stage);
+        }
+        return counts;
+    }
+
+    @Override
+    public double[] getStageTotalMillis() {
+        double[] millis = new double[Stage.values().length];
+        for(Stage stage : Stage.values()){
+            millis[stage.ordinal()] = getStageNanos(stage) / 1e6;
+        }
+        return millis;
+    }
+
+    @Override
+    public double[] getStageP99Micros() {
+        double[] micros = new double[Stage.values().length];
+        for(Stage stage : Stage.values()){
+            micros[stage.ordinal()] = getPercentileNanos(stage, 0.99) / 1e3;
+        }
+        return micros;
+    }
+
+    @Override
+    public String getJson() {
+        StringBuilder json = new StringBuilder();
+        json.append("{\n  \"elapsedMillis\": ").append(getElapsedMillis());
+        json.append(",\n  \"counters\": {");
+        json.append("\"files\": ").append(getFiles());
+        json.append(", \"bytes\": ").append(getBytes());
+        json.append(", \"tokens\": ").append(getTokens());
+        json.append(", \"uniqueTerms\": ").append(getUniqueTerms());
+        json.append(", \"postings\": ").append(getPostings());
+        json.append(", \"rows\": ").append(getRows());
+        json.append("},\n  \"throughput\": {");
+        json.append("\"filesPerSecond\": ").append(number(getFilesPerSecond()));
+        json.append(", \"bytesPerSecond\": ").append(number(perSecond(getBytes())));
+        json.append(", \"tokensPerSecond\": ").append(number(getTokensPerSecond()));
+        json.append("},\n  \"stages\": {");
+        for(Stage stage : Stage.values()){
+            long count = getStageCount(stage);
+            json.append(stage.ordinal() == 0 ? "\n" : ",\n");
+            json.append("    \"").append(name(stage)).append("\": {");
+            json.append("\"count\": ").append(count);
+            json.append(", \"totalMillis\": ").append(number(getStageNanos(stage) / 1e6));
+            json.append(", \"meanMicros\": ").append(number(count == 0 ? 0d : getStageNanos(stage) / 1e3 / count));
+            json.append(", \"p50Micros\": ").append(number(getPercentileNanos(stage, 0.5) / 1e3));
+            json.append(", \"p90Micros\": ").append(number(getPercentileNanos(stage, 0.9) / 1e3));
+            json.append(", \"p99Micros\": ").append(number(getPercentileNanos(stage, 0.99) / 1e3));
+            json.append(", \"maxMicros\": ").append(number(stageMax[stage.ordinal()].get() / 1e3));
+            json.append('}');
+        }
+        json.append("\n  }\n}\n");
+        return json.toString();
+    }
+
+    // *** helper methods
+    private double perSecond(long value) {
+        long nanos = System.nanoTime() - start;
+        return nanos == 0 ? 0d : value * 1e9 / nanos;
+    }
+
+    private static String name(Stage stage) {
+        String[] words = stage.name().toLowerCase(Locale.ROOT).split("_");
+        StringBuilder name = new StringBuilder(words[0]);
+        for(int i = 1; i < words.length; i++){
+            name.append(Character.toUpperCase(words[i].charAt(0))).append(words[i].substring(1));
+        }
+        return name.toString();
+    }
+
+    private static String number(double value) {
+        return String.format(Locale.ROOT, "%.3f", value);
+    }
+
+    private static int bucket(long nanos) {
+        return nanos == 0 ? 0 : Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(nanos));
+    }
+
+    private static long upperBound(int bucket) {
+        return bucket >= 63 ? Long.MAX_VALUE : (1L << bucket) - 1;
+    }
+
+    private static LongAdder[] adders(int count) {
+        LongAdder[] adders = new LongAdder[count];
+        for(int i = 0; i < count; i++){
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+}
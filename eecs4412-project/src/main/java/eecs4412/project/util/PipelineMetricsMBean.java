@@ -0,0 +1,43 @@
+package eecs4412.project.util;
+
+/**
+ * JMX view of PipelineMetrics, registered as eecs4412.project:type=PipelineMetrics
+ */
+public interface PipelineMetricsMBean {
+
+    long getFiles();
+
+    long getBytes();
+
+    long getTokens();
+
+    long getPostings();
+
+    long getRows();
+
+    long getUniqueTerms();
+
+    long getElapsedMillis();
+
+    double getFilesPerSecond();
+
+    double getTokensPerSecond();
+
+    /**
+     *
+     * @return stage names, in the order of the per-stage arrays
+     */
+    String[] getStages();
+
+    long[] getStageCounts();
+
+    double[] getStageTotalMillis();
+
+    double[] getStageP99Micros();
+
+    /**
+     *
+     * @return the run report, as written to metrics.json
+     */
+    String getJson();
+}
@@ -0,0 +1,149 @@
+package eecs4412.project.util;
+
+/**
+ * Bounded word -> stem cache placed in front of PorterStemmer. Entries live in 4-way
+ * sets chosen by the hash of the lower-cased surface word, and a miss evicts the least
+ * recently used entry of its set. Lookups take char slices, so a hit allocates nothing.
+ * Not thread-safe, use one instance per thread.
+ */
+public class StemCache {
+
+    private static final int WAYS = 4;
+    private static final int INITIAL_WORD_SIZE = 16;
+
+    private final int setMask;
+    private final char[][] words;
+    private final int[] wordLengths;
+    private final int[] hashes;
+    private final char[][] stems;
+    private final int[] stemLengths;
+    private final long[] lastUsed;
+    private long clock;
+    private long hits;
+    private long misses;
+
+    /**
+     *
+     * @param capacity maximum number of cached words, rounded up to a multiple of 4
+     */
+    public StemCache(int capacity) {
+        super();
+        int sets = Integer.highestOneBit(Math.max(1, (capacity + WAYS - 1) / WAYS) * 2 - 1);
+        int size = sets * WAYS;
+        this.setMask = sets - 1;
+        this.words = new char[size][];
+        this.wordLengths = new int[size];
+        this.hashes = new int[size];
+        this.stems = new char[size][];
+        this.stemLengths = new int[size];
+        this.lastUsed = new long[size];
+    }
+
+    /**
+     *
+     * @param word
+     * @param offset
+     * @param length
+     * @return the entry holding the stem of word, or -1 on a miss
+     */
+    public int lookup(char[] word, int offset, int length) {
+        int hash = hash(word, offset, length);
+        int first = (mix(hash) & setMask) * WAYS;
+        for(int entry = first; entry < first + WAYS; entry++){
+            if(lastUsed[entry] != 0 && hashes[entry] == hash && matches(entry, word, offset, length)){
+                lastUsed[entry] = ++clock;
+                hits++;
+                return entry;
+            }
+        }
+        misses++;
+        return -1;
+    }
+
+    /**
+     * caches the stem of word, evicting the least recently used word of its set
+     * @param word
+     * @param offset
+     * @param length
+     * @param stem
+     * @param stemLength
+     * @return the entry holding the stem
+     */
+    public int put(char[] word, int offset, int length, char[] stem, int stemLength) {
+        int hash = hash(word, offset, length);
+        int first = (mix(hash) & setMask) * WAYS;
+        int victim = first;
+        for(int entry = first + 1; entry < first + WAYS; entry++){
+            if(lastUsed[entry] < lastUsed[victim]){
+                victim = entry;
+            }
+        }
+        words[victim] = copy(words[victim], word, offset, length);
+        wordLengths[victim] = length;
+        stems[victim] = copy(stems[victim], stem, 0, stemLength);
+        stemLengths[victim] = stemLength;
+        hashes[victim] = hash;
+        lastUsed[victim] = ++clock;
+        return victim;
+    }
+
+    public char[] getStem(int entry) {
+        return stems[entry];
+    }
+
+    public int getStemLength(int entry) {
+        return stemLengths[entry];
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    /**
+     *
+     * @return hits / lookups, 0 before the first lookup
+     */
+    public double getHitRate() {
+        long lookups = hits + misses;
+        return lookups == 0 ? 0d : (double) hits / lookups;
+    }
+
+    // *** helper methods
+    private boolean matches(int entry, char[] word, int offset, int length) {
+        if(wordLengths[entry] != length){
+            return false;
+        }
+        char[] cached = words[entry];
+        for(int i = 0; i < length; i++){
+            if(cached[i] != word[offset + i]){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static char[] copy(char[] target, char[] source, int offset, int length) {
+        if(target == null || target.length < length){
+            target = new char[Math.max(INITIAL_WORD_SIZE, length)];
+        }
+        System.arraycopy(source, offset, target, 0, length);
+        return target;
+    }
+
+    private static int hash(char[] word, int offset, int length) {
+        int hash = 0;
+        for(int i = offset; i < offset + length; i++){
+            hash = 31 * hash + word[i];
+        }
+        return hash;
+    }
+
+    private static int mix(int hash) {
+        hash *= 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+}
@@ -0,0 +1,163 @@
+package eecs4412.project.util;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collection;
+
+import eecs4412.project.model.Dictionary;
+
+/**
+ * Splits text on anything that is not an ASCII letter, lower-cases and stems every word
+ * and hands the non stop-word stems to a TermConsumer as a slice of a reused char buffer.
+ * Equivalent to split("[^A-Za-z]+") + toLowerCase() + PorterStemmer.stem(String),
+ * without creating a String per token. Text can be fed as chars or as ISO-8859-1 bytes.
+ * Not thread-safe, use one instance per thread.
+ */
+public class Tokenizer {
+
+    /**
+     * Receives a stemmed term; the buffer is only valid for the duration of the call
+     */
+    @FunctionalInterface
+    public interface TermConsumer {
+        void accept(char[] buffer, int offset, int length);
+    }
+
+    private static final int INITIAL_SIZE = 50;
+
+    private final PorterStemmer stemmer = new PorterStemmer();
+    private final StemCache stemCache;
+    private final Dictionary stopWords;
+    private final PipelineMetrics metrics;
+    private char[] word = new char[INITIAL_SIZE];
+    private int length;
+    // time spent in the stages of flushed tokens, kept out of TOKENIZE
+    private long tokenNanos;
+
+    public Tokenizer(Collection<String> stopWords) {
+        this(stopWords, 0);
+    }
+
+    /**
+     *
+     * @param stopWords
+     * @param stemCacheSize number of words whose stem is cached, 0 to always run the stemmer
+     */
+    public Tokenizer(Collection<String> stopWords, int stemCacheSize) {
+        this(stopWords, stemCacheSize, PipelineMetrics.DISABLED);
+    }
+
+    /**
+     *
+     * @param stopWords
+     * @param stemCacheSize number of words whose stem is cached, 0 to always run the stemmer
+     * @param metrics times the tokenize, stem, stop-word and term consumer stages
+     */
+    public Tokenizer(Collection<String> stopWords, int stemCacheSize, PipelineMetrics metrics) {
+        super();
+        this.metrics = metrics;
+        this.stopWords = new Dictionary(stopWords.size());
+        stopWords.forEach(this.stopWords::intern);
+        this.stemCache = stemCacheSize > 0 ? new StemCache(stemCacheSize) : null;
+    }
+
+    /**
+     * tokenize the text, words never span two calls
+     * @param text
+     * @param consumer
+     */
+    public void tokenize(CharSequence text, TermConsumer consumer) {
+        long start = metrics.now();
+        long tokenNanos = this.tokenNanos;
+        for(int i = 0, n = text.length(); i < n; i++){
+            append(text.charAt(i), consumer);
+        }
+        metrics.recordNanos(PipelineMetrics.Stage.TOKENIZE, metrics.now() - start - (this.tokenNanos - tokenNanos));
+        flush(consumer);
+    }
+
+    /**
+     * tokenize ISO-8859-1 bytes; a word at the end of bytes is kept pending so it can 
+     * continue in the next chunk, call flush once the input is exhausted
+     * @param bytes consumed up to its limit
+     * @param consumer
+     */
+    public void tokenize(ByteBuffer bytes, TermConsumer consumer) {
+        long start = metrics.now();
+        long tokenNanos = this.tokenNanos;
+        while(bytes.hasRemaining()){
+            append((char)(bytes.get() & 0xFF), consumer);
+        }
+        metrics.recordNanos(PipelineMetrics.Stage.TOKENIZE, metrics.now() - start - (this.tokenNanos - tokenNanos));
+    }
+
+    /**
+     * feeds a single character, emitting the pending word when c is a separator
+     * @param c
+     * @param consumer
+     */
+    public void append(char c, TermConsumer consumer) {
+        if(c >= 'a' && c <= 'z'){
+            push(c);
+        } else if(c >= 'A' && c <= 'Z'){
+            push((char)(c | 0x20));
+        } else if(length > 0){
+            flush(consumer);
+        }
+    }
+
+    /**
+     * emits the pending word, if any
+     * @param consumer
+     */
+    public void flush(TermConsumer consumer) {
+        if(length == 0){
+            return;
+        }
+        long start = metrics.now();
+        metrics.addToken();
+        char[] stem;
+        int stemLength;
+        int entry = stemCache != null ? stemCache.lookup(word, 0, length) : -1;
+        if(entry >= 0){
+            stem = stemCache.getStem(entry);
+            stemLength = stemCache.getStemLength(entry);
+        } else {
+            stemmer.stem(word, 0, length);
+            stem = stemmer.getResultBuffer();
+            stemLength = stemmer.getResultLength();
+            if(stemCache != null){
+                stemCache.put(word, 0, length, stem, stemLength);
+            }
+        }
+        length = 0;
+        long time = metrics.record(PipelineMetrics.Stage.STEM, start);
+        boolean stopWord = stemLength == 0 || stopWords.lookup(stem, 0, stemLength) >= 0;
+        time = metrics.record(PipelineMetrics.Stage.STOP_WORDS, time);
+        if(!stopWord){
+            consumer.accept(stem, 0, stemLength);
+            time = metrics.record(PipelineMetrics.Stage.INDEX, time);
+        }
+        tokenNanos += time - start;
+    }
+
+    /**
+     *
+     * @return the stem cache, null when disabled
+     */
+    public StemCache getStemCache() {
+        return stemCache;
+    }
+
+    public PipelineMetrics getMetrics() {
+        return metrics;
+    }
+
+    // *** helper method
+    private void push(char c) {
+        if(length == word.length){
+            word = Arrays.copyOf(word, length * 2);
+        }
+        word[length++] = c;
+    }
+}
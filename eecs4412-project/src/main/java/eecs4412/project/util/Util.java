@@ -19,6 +19,9 @@ import org.apache.commons.cli.Option;
 import org.apache.commons.cli.Options;
 import org.apache.commons.cli.ParseException;
 
+import eecs4412.project.model.CellEncoder;
+import eecs4412.project.model.WeightingScheme;
+
 public final class Util {
     
     public static final String STOP_WORDS_FILE_ARG = "s";
@@ -28,9 +31,25 @@ public final class Util {
     public static final String TEST_FILE_ARG = "T";
     public static final String UPPER_PERCENT_ARG = "u";
     public static final String LOWER_PERCENT_ARG = "l";
+    public static final String THREADS_ARG = "p";
+    public static final String SPARSE_ARG = "S";
+    public static final String INDEX_FILE_ARG = "i";
+    public static final String STEM_CACHE_ARG = "c";
+    public static final String INCREMENTAL_ARG = "I";
+    public static final String MODEL_FILE_ARG = "m";
+    public static final String STREAM_ARG = "V";
+    public static final String CLASSIFY_ARG = "N";
+    public static final String DAEMON_ARG = "D";
+    public static final String METRICS_ARG = "R";
+    public static final String MEMORY_BUDGET_ARG = "B";
+    public static final String WEIGHTING_ARG = "w";
+    public static final String DIGITS_ARG = "d";
+    public static final String QUANTIZE_ARG = "q";
 
     public static final double DEFAULT_UPPER_PERCENTILE = 0.59;
     public static final double DEFAULT_LOWER_PERCENTILE = 0.01;
+    public static final int DEFAULT_THREADS = 1;
+    public static final int DEFAULT_STEM_CACHE_SIZE = 1 << 16;
     public static final String DEFAULT_OUT_PATH = System.getProperty("user.dir");
 
     public static final Consumer<Object> PRINTER = System.out::println;
@@ -56,13 +75,27 @@ public final class Util {
         Option testOutFormat = new Option( TEST_OUT_FILE_ARG, "test-output file" );
         Option upperPercntileFormat = new Option( UPPER_PERCENT_ARG, "frequeny-upper percintle [0.0 - 1.0]" );
         Option lowerPercntileFormat = new Option( LOWER_PERCENT_ARG, "frequeny-lower percintle [0.0 - 1.0]" );
+        Option threadsFormat = new Option( THREADS_ARG, "ingestion threads" );
+        Option sparseFormat = new Option( SPARSE_ARG, "sparse ARFF output" );
+        Option indexFileFormat = new Option( INDEX_FILE_ARG, "train-index file" );
+        Option stemCacheFormat = new Option( STEM_CACHE_ARG, "stem cache size" );
+        Option incrementalFormat = new Option( INCREMENTAL_ARG, "incremental training" );
+        Option modelFileFormat = new Option( MODEL_FILE_ARG, "train-model file" );
+        Option streamFormat = new Option( STREAM_ARG, "streaming test output" );
+        Option classifyFormat = new Option( CLASSIFY_ARG, "naive bayes classification" );
+        Option daemonFormat = new Option( DAEMON_ARG, "spool daemon" );
+        Option metricsFormat = new Option( METRICS_ARG, "pipeline metrics" );
+        Option memoryBudgetFormat = new Option( MEMORY_BUDGET_ARG, "index memory budget" );
+        Option weightingFormat = new Option( WEIGHTING_ARG, "term weighting" );
+        Option digitsFormat = new Option( DIGITS_ARG, "significant digits" );
+        Option quantizeFormat = new Option( QUANTIZE_ARG, "quantized weights" );
        
         stopWordsFormat.setRequired(false);
         stopWordsFormat.setArgs(1);
         stopWordsFormat.setLongOpt("[optional] path to file containg stop words [csv or space-separated]");
-        trainFileRawFormat.setRequired(true);
+        trainFileRawFormat.setRequired(false);
         trainFileRawFormat.setArgs(1);
-        trainFileRawFormat.setLongOpt("path to file/directory containg training emails");
+        trainFileRawFormat.setLongOpt("path to file/directory containg training emails [required unless -i or -m is given]");
         testFileRawFormat.setRequired(true);
         testFileRawFormat.setArgs(1);
         testFileRawFormat.setLongOpt("path to file/directory containg raw test emails");
@@ -78,6 +111,48 @@ public final class Util {
         lowerPercntileFormat.setRequired(false);
         lowerPercntileFormat.setArgs(1);
         lowerPercntileFormat.setLongOpt("[optional] lower percentile for frequency selection [defualt 0.01]");
+        threadsFormat.setRequired(false);
+        threadsFormat.setArgs(1);
+        threadsFormat.setLongOpt("[optional] number of threads used to index emails [defualt 1]");
+        sparseFormat.setRequired(false);
+        sparseFormat.setArgs(0);
+        sparseFormat.setLongOpt("[optional] write ARFF rows in sparse format, only non-zero weights and the class");
+        indexFileFormat.setRequired(false);
+        indexFileFormat.setArgs(1);
+        indexFileFormat.setLongOpt("[optional] path to a binary train index (trainInvertedIndex.bin) of a previous run, used instead of re-indexing the training emails");
+        stemCacheFormat.setRequired(false);
+        stemCacheFormat.setArgs(1);
+        stemCacheFormat.setLongOpt("[optional] number of words whose stem is cached per thread, 0 disables the cache [defualt 65536]");
+        incrementalFormat.setRequired(false);
+        incrementalFormat.setArgs(0);
+        incrementalFormat.setLongOpt("[optional] add only new or changed training emails to the index given by -i [defualt trainInvertedIndex.bin in the train output directory]");
+        modelFileFormat.setRequired(false);
+        modelFileFormat.setArgs(1);
+        modelFileFormat.setLongOpt("[optional] path to the model (trainModel.bin) of a previous run, test emails are scored against it and training is skipped");
+        streamFormat.setRequired(false);
+        streamFormat.setArgs(0);
+        streamFormat.setLongOpt("[optional] flush every test row to the output as soon as its email is vectorized");
+        classifyFormat.setRequired(false);
+        classifyFormat.setArgs(0);
+        classifyFormat.setLongOpt("[optional] classify the test emails with the embedded Naive Bayes classifier into predictions.csv and report accuracy and throughput");
+        daemonFormat.setRequired(false);
+        daemonFormat.setArgs(0);
+        daemonFormat.setLongOpt("[optional] keep running, watching the test directory and appending a row (and a prediction with -N) per new email to rolling stream-NNNNN files in the test output directory, moving each processed email to the processed subdirectory of the test directory");
+        metricsFormat.setRequired(false);
+        metricsFormat.setArgs(0);
+        metricsFormat.setLongOpt("[optional] collect per-stage metrics, live through JMX (" + PipelineMetrics.OBJECT_NAME + ") and as metrics.json in the test output directory");
+        memoryBudgetFormat.setRequired(false);
+        memoryBudgetFormat.setArgs(1);
+        memoryBudgetFormat.setLongOpt("[optional] index the training emails out of core, spilling sorted runs to disk whenever the in-memory block reaches this many MB, then merging them into trainInvertedIndex.bin");
+        weightingFormat.setRequired(false);
+        weightingFormat.setArgs(1);
+        weightingFormat.setLongOpt("[optional] weighting of the ARFF cells: tfidf, raw (raw tf), log (log tf), bm25 (saturated tf) or l2 (tfidf rows of unit length); a model given by -m keeps its own [defualt tfidf]");
+        digitsFormat.setRequired(false);
+        digitsFormat.setArgs(1);
+        digitsFormat.setLongOpt("[optional] significant digits of the ARFF weights, 1 to " + CellEncoder.MAX_DIGITS + " [defualt shortest exact decimal]");
+        quantizeFormat.setRequired(false);
+        quantizeFormat.setArgs(1);
+        quantizeFormat.setLongOpt("[optional] write the ARFF weights as 8 or 16 bit integer levels of the max training weight, the scale is recorded in a header comment; a model given by -m must have been trained with -q");
 
         options.addOption(trainFileRawFormat);
         options.addOption(testFileRawFormat);
@@ -86,6 +161,20 @@ public final class Util {
         options.addOption(testOutFormat);
         options.addOption(upperPercntileFormat);
         options.addOption(lowerPercntileFormat);
+        options.addOption(threadsFormat);
+        options.addOption(sparseFormat);
+        options.addOption(indexFileFormat);
+        options.addOption(stemCacheFormat);
+        options.addOption(incrementalFormat);
+        options.addOption(modelFileFormat);
+        options.addOption(streamFormat);
+        options.addOption(classifyFormat);
+        options.addOption(daemonFormat);
+        options.addOption(metricsFormat);
+        options.addOption(memoryBudgetFormat);
+        options.addOption(weightingFormat);
+        options.addOption(digitsFormat);
+        options.addOption(quantizeFormat);
 
         // handle command arguments
         CommandLine commandline = null;
@@ -96,8 +185,19 @@ public final class Util {
             printUsageAndExit(options);
         }
         Objects.requireNonNull(commandline);
-        if(!Files.isRegularFile(Paths.get(commandline.getOptionValue(TRAIN_FILE_ARG))) &&
-           !Files.isDirectory(Paths.get(commandline.getOptionValue(TRAIN_FILE_ARG)))){
+        if(commandline.getOptionValue(INDEX_FILE_ARG) != null &&
+           !Files.isRegularFile(Paths.get(commandline.getOptionValue(INDEX_FILE_ARG)))){
+            printUsageAndExit(options);
+        }
+        if(commandline.getOptionValue(MODEL_FILE_ARG) != null &&
+           !Files.isRegularFile(Paths.get(commandline.getOptionValue(MODEL_FILE_ARG)))){
+            printUsageAndExit(options);
+        }
+        if(commandline.getOptionValue(MODEL_FILE_ARG) == null &&
+           (commandline.getOptionValue(INDEX_FILE_ARG) == null || commandline.hasOption(INCREMENTAL_ARG)) &&
+           (commandline.getOptionValue(TRAIN_FILE_ARG) == null ||
+            (!Files.isRegularFile(Paths.get(commandline.getOptionValue(TRAIN_FILE_ARG))) &&
+             !Files.isDirectory(Paths.get(commandline.getOptionValue(TRAIN_FILE_ARG)))))){
             printUsageAndExit(options);
         }
            
@@ -105,6 +205,9 @@ public final class Util {
             !Files.isDirectory(Paths.get(commandline.getOptionValue(TEST_FILE_ARG)))){
             printUsageAndExit(options);
          }
+        if(commandline.hasOption(DAEMON_ARG) && !Files.isDirectory(Paths.get(commandline.getOptionValue(TEST_FILE_ARG)))){
+            printUsageAndExit(options);
+        }
         
         // optional 
         try{
@@ -127,6 +230,27 @@ public final class Util {
             if(Double.compare(upperPercintile, lowerPercintile) <= 0){
                 throw new Exception();
             }
+            if(commandline.getOptionValue(THREADS_ARG) != null
+                    && Integer.parseInt(commandline.getOptionValue(THREADS_ARG)) < 1){
+                throw new Exception();
+            }
+            if(commandline.getOptionValue(MEMORY_BUDGET_ARG) != null
+                    && Long.parseLong(commandline.getOptionValue(MEMORY_BUDGET_ARG)) < 1){
+                throw new Exception();
+            }
+            if(commandline.getOptionValue(WEIGHTING_ARG) != null){
+                WeightingScheme.forName(commandline.getOptionValue(WEIGHTING_ARG));
+            }
+            if(commandline.getOptionValue(STEM_CACHE_ARG) != null
+                    && Integer.parseInt(commandline.getOptionValue(STEM_CACHE_ARG)) < 0){
+                throw new Exception();
+            }
+            if(commandline.getOptionValue(DIGITS_ARG) != null){
+                CellEncoder.digits(Integer.parseInt(commandline.getOptionValue(DIGITS_ARG)));
+            }
+            if(commandline.getOptionValue(QUANTIZE_ARG) != null){
+                CellEncoder.quantized(Integer.parseInt(commandline.getOptionValue(QUANTIZE_ARG)), 1d);
+            }
         } catch (Exception ex){
             printUsageAndExit(options);
         }
@@ -139,6 +263,20 @@ public final class Util {
         retValue.put(STOP_WORDS_FILE_ARG, commandline.getOptionValue(STOP_WORDS_FILE_ARG));
         retValue.put(UPPER_PERCENT_ARG, commandline.getOptionValue(UPPER_PERCENT_ARG));
         retValue.put(LOWER_PERCENT_ARG, commandline.getOptionValue(LOWER_PERCENT_ARG));
+        retValue.put(THREADS_ARG, commandline.getOptionValue(THREADS_ARG));
+        retValue.put(SPARSE_ARG, Boolean.toString(commandline.hasOption(SPARSE_ARG)));
+        retValue.put(INDEX_FILE_ARG, commandline.getOptionValue(INDEX_FILE_ARG));
+        retValue.put(STEM_CACHE_ARG, commandline.getOptionValue(STEM_CACHE_ARG));
+        retValue.put(INCREMENTAL_ARG, Boolean.toString(commandline.hasOption(INCREMENTAL_ARG)));
+        retValue.put(MODEL_FILE_ARG, commandline.getOptionValue(MODEL_FILE_ARG));
+        retValue.put(STREAM_ARG, Boolean.toString(commandline.hasOption(STREAM_ARG)));
+        retValue.put(CLASSIFY_ARG, Boolean.toString(commandline.hasOption(CLASSIFY_ARG)));
+        retValue.put(DAEMON_ARG, Boolean.toString(commandline.hasOption(DAEMON_ARG)));
+        retValue.put(METRICS_ARG, Boolean.toString(commandline.hasOption(METRICS_ARG)));
+        retValue.put(MEMORY_BUDGET_ARG, commandline.getOptionValue(MEMORY_BUDGET_ARG));
+        retValue.put(WEIGHTING_ARG, commandline.getOptionValue(WEIGHTING_ARG));
+        retValue.put(DIGITS_ARG, commandline.getOptionValue(DIGITS_ARG));
+        retValue.put(QUANTIZE_ARG, commandline.getOptionValue(QUANTIZE_ARG));
         return retValue;
     }
 
@@ -0,0 +1,114 @@
+package eecs4412.project.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import eecs4412.project.model.VocabularyModel;
+
+/**
+ * Turns one email into one row of weights over the fixed vocabulary, IDF table and
+ * weighting scheme of a VocabularyModel. Terms that are not attributes are dropped as
+ * soon as they are stemmed, only the columns an email touched are weighed and reset, and
+ * the counts and the row are reused from one email to the next, so memory does not grow
+ * with the number of emails vectorized.
+ * Not thread-safe, use one instance per thread.
+ */
+public class Vectorizer {
+
+    private final VocabularyModel model;
+    private final Tokenizer tokenizer;
+    private final ByteFileReader reader;
+    private final int[] counts;
+    private final double[] row;
+    // columns found in the email being counted, and those set in row by the last one
+    private int[] columns;
+    private int columnCount;
+    private int[] rowColumns;
+    private int rowColumnCount;
+    private final int[] frequencies;
+    private final Tokenizer.TermConsumer counter;
+
+    /**
+     *
+     * @param model
+     * @param tokenizer used by this vectorizer only
+     */
+    public Vectorizer(VocabularyModel model, Tokenizer tokenizer) {
+        super();
+        this.model = model;
+        this.tokenizer = tokenizer;
+        this.reader = new ByteFileReader(tokenizer.getMetrics());
+        this.counts = new int[model.size()];
+        this.row = new double[model.size()];
+        this.columns = new int[model.size()];
+        this.rowColumns = new int[model.size()];
+        this.frequencies = new int[model.size()];
+        this.counter = (buffer, offset, length) -> {
+            int column = model.lookup(buffer, offset, length);
+            if(column >= 0 && counts[column]++ == 0){
+                columns[columnCount++] = column;
+            }
+        };
+    }
+
+    /**
+     *
+     * @param file raw email
+     * @return the weights in column order; the array is reused by the next call
+     * @throws IOException
+     */
+    public double[] vectorize(Path file) throws IOException {
+        reader.read(file, bytes -> tokenizer.tokenize(bytes, counter));
+        tokenizer.flush(counter);
+        return weigh();
+    }
+
+    /**
+     *
+     * @param email whole email as ISO-8859-1 bytes, consumed up to its limit
+     * @return the weights in column order; the array is reused by the next call
+     */
+    public double[] vectorize(ByteBuffer email) {
+        tokenizer.tokenize(email, counter);
+        tokenizer.flush(counter);
+        return weigh();
+    }
+
+    /**
+     *
+     * @param email whole email
+     * @return the weights in column order; the array is reused by the next call
+     */
+    public double[] vectorize(CharSequence email) {
+        tokenizer.tokenize(email, counter);
+        return weigh();
+    }
+
+    public VocabularyModel getModel() {
+        return model;
+    }
+
+    // *** helper method
+    private double[] weigh() {
+        long start = tokenizer.getMetrics().now();
+        for(int i = 0; i < rowColumnCount; i++){
+            row[rowColumns[i]] = 0d;
+        }
+        // in column order like the training rows, so sums over a row round the same way
+        Arrays.sort(columns, 0, columnCount);
+        for(int i = 0; i < columnCount; i++){
+            frequencies[i] = counts[columns[i]];
+            counts[columns[i]] = 0;
+        }
+        model.weigh(columns, frequencies, columnCount, row);
+        int[] swap = rowColumns;
+        rowColumns = columns;
+        rowColumnCount = columnCount;
+        columns = swap;
+        columnCount = 0;
+        tokenizer.getMetrics().record(PipelineMetrics.Stage.ARFF, start);
+        return row;
+    }
+}